@@ -21,9 +21,14 @@
 package eu.artemis.demanes.datatypes;
 
 import java.io.Serializable;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * ANES_URN
@@ -35,11 +40,70 @@ import java.util.Map;
  */
 public class ANES_URN implements Comparable<ANES_URN>, Serializable {
 
+	/**
+	 * Weak reference to a canonical instance, which remembers its key so that
+	 * the table entry can be removed once the instance is collected.
+	 */
+	private static final class Canonical extends WeakReference<ANES_URN> {
+
+		/**
+		 * The text of the referenced URN.
+		 */
+		private final String key;
+
+		/**
+		 * @param urn
+		 *            The canonical instance
+		 */
+		Canonical(final ANES_URN urn) {
+			super(urn, ANES_URN.COLLECTED);
+			this.key = urn.toString();
+		}
+
+	}
+
+	/**
+	 * Canonical instances handed out by {@link #intern()}, keyed by their text.
+	 */
+	private static final ConcurrentMap<String, Canonical> CANONICAL = new ConcurrentHashMap<String, Canonical>();
+
+	/**
+	 * Queue on which references to collected canonical instances appear.
+	 */
+	private static final ReferenceQueue<ANES_URN> COLLECTED = new ReferenceQueue<ANES_URN>();
+
 	/**
 	 * For serialization purposes.
 	 */
 	private static final long serialVersionUID = -1928581708496063566L;
 
+	/**
+	 * Make the URN the canonical instance for its text, unless another
+	 * instance already is.
+	 * 
+	 * @param urn
+	 *            The candidate instance
+	 * @return The canonical instance
+	 */
+	private static ANES_URN canonicalize(final ANES_URN urn) {
+		ANES_URN.expunge();
+		final Canonical ref = new Canonical(urn);
+		while (true) {
+			final Canonical existing = ANES_URN.CANONICAL.putIfAbsent(ref.key,
+					ref);
+			if (existing == null) {
+				return urn;
+			}
+			final ANES_URN other = existing.get();
+			if (other != null) {
+				return other;
+			}
+			if (ANES_URN.CANONICAL.replace(ref.key, existing, ref)) {
+				return urn;
+			}
+		}
+	}
+
 	/**
 	 * Creates an instance of ANES_URN and throws a runtime exception if its
 	 * syntax is not valid.
@@ -54,6 +118,35 @@ public class ANES_URN implements Comparable<ANES_URN>, Serializable {
 		return new ANES_URN(text);
 	}
 
+	/**
+	 * Remove the table entries of canonical instances that were collected.
+	 */
+	private static void expunge() {
+		Reference<? extends ANES_URN> ref;
+		while ((ref = ANES_URN.COLLECTED.poll()) != null) {
+			ANES_URN.CANONICAL.remove(((Canonical) ref).key, ref);
+		}
+	}
+
+	/**
+	 * Get the canonical instance of the ANES_URN with the given text, creating
+	 * it if there is none yet. Equal URNs obtained through this function are
+	 * the same instance, for as long as any of them is referenced.
+	 * 
+	 * @param text
+	 *            The text of the URN
+	 * @return The canonical URN
+	 * @throws URISyntaxException
+	 *             the exception generated if the syntax is not correct.
+	 */
+	public static ANES_URN intern(final String text) throws URISyntaxException {
+		final ANES_URN urn = ANES_URN.lookup(text);
+		if (urn != null) {
+			return urn;
+		}
+		return ANES_URN.canonicalize(new ANES_URN(text));
+	}
+
 	/**
 	 * Is it a valid URN?
 	 * 
@@ -65,6 +158,29 @@ public class ANES_URN implements Comparable<ANES_URN>, Serializable {
 		return URN.isValid(text);
 	}
 
+	/**
+	 * Find the canonical instance with the given text.
+	 * 
+	 * @param text
+	 *            The text of the URN
+	 * @return The canonical instance, or null if there is none
+	 */
+	private static ANES_URN lookup(final String text) {
+		if (text == null) {
+			return null;
+		}
+		final Canonical ref = ANES_URN.CANONICAL.get(text);
+		if (ref == null) {
+			return null;
+		}
+		return ref.get();
+	}
+
+	/**
+	 * This ANES_URN without params, created on first use.
+	 */
+	private transient volatile ANES_URN pure;
+
 	/**
 	 * The basic information container for this type.
 	 */
@@ -94,6 +210,16 @@ public class ANES_URN implements Comparable<ANES_URN>, Serializable {
 		this.urn = new URN(nid, nss);
 	}
 
+	/**
+	 * Private constructor of a URN that is already parsed.
+	 * 
+	 * @param urn
+	 *            The URN
+	 */
+	private ANES_URN(final URN urn) {
+		this.urn = urn;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -107,7 +233,13 @@ public class ANES_URN implements Comparable<ANES_URN>, Serializable {
 	 */
 	@Override
 	public boolean equals(final Object obj) {
-		return this.urn.equals(obj);
+		if (obj == this) {
+			return true;
+		}
+		if (!(obj instanceof ANES_URN)) {
+			return false;
+		}
+		return this.urn.equals(((ANES_URN) obj).urn);
 	}
 
 	/**
@@ -127,6 +259,21 @@ public class ANES_URN implements Comparable<ANES_URN>, Serializable {
 		return this.urn.hasParams();
 	}
 
+	/**
+	 * Get the canonical instance of this ANES_URN, in the same way as
+	 * {@link #intern(String)}. If there is none yet, this instance becomes
+	 * the canonical one.
+	 * 
+	 * @return The canonical URN
+	 */
+	public ANES_URN intern() {
+		final ANES_URN urn = ANES_URN.lookup(this.toString());
+		if (urn != null) {
+			return urn;
+		}
+		return ANES_URN.canonicalize(this);
+	}
+
 	/**
 	 * Is this ANES_URN empty?
 	 * 
@@ -199,18 +346,44 @@ public class ANES_URN implements Comparable<ANES_URN>, Serializable {
 	}
 
 	/**
-	 * Get just body of URN, without params.
+	 * Get just body of URN, without params. The result is created once, and
+	 * is this ANES_URN itself if it has no params.
 	 * 
 	 * @return another ANES_URN with only the body, no parameters.
 	 */
 	public ANES_URN pure() {
-		URN newURN = this.urn.pure();
-		try {
-			return ANES_URN.create(newURN.toString());
-		} catch (URISyntaxException e) {
-			e.printStackTrace();
+		if (!this.hasParams()) {
 			return this;
 		}
+		ANES_URN value = this.pure;
+		if (value == null) {
+			value = new ANES_URN(this.urn.pure());
+			this.pure = value;
+		}
+		return value;
+	}
+
+	/**
+	 * Does this URN without params equal the other URN without params?
+	 * 
+	 * @param other
+	 *            The other URN
+	 * @return Yes or no
+	 * @see URN#pureEquals(URN)
+	 */
+	public boolean pureEquals(final ANES_URN other) {
+		return this.urn.pureEquals(other.urn);
+	}
+
+	/**
+	 * Get the hash code of this URN without params, which equals the hash
+	 * code of {@link #pure()}.
+	 * 
+	 * @return The hash code
+	 * @see URN#pureHashCode()
+	 */
+	public int pureHashCode() {
+		return this.urn.pureHashCode();
 	}
 
 	/**
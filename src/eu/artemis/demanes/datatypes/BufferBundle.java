@@ -0,0 +1,849 @@
+/**
+ * File BufferBundle.java
+ * Created by DEMANES
+ * 
+ * This file was created for the DEMANES project 2014.
+ * 
+ * Copyright 2014 TNO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.artemis.demanes.datatypes;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import eu.artemis.demanes.exceptions.NonExistentKeyException;
+import eu.artemis.demanes.exceptions.TypedRequestException;
+
+/**
+ * BufferBundle
+ * 
+ * A {@link TypedBundle} read lazily from a flat binary layout in a
+ * {@link ByteBuffer}, such as the buffer handed to a message dispatcher. Only
+ * the values that are asked for are decoded, straight from the buffer, which
+ * may be a direct one.
+ * 
+ * <p>
+ * The layout, in big-endian byte order, is:
+ * </p>
+ * <ul>
+ * <li>the total length of the bundle in bytes, and the number of entries, as
+ * two ints;</li>
+ * <li>a table of 20 bytes per entry, sorted on the hash code of the key,
+ * holding that hash code, the offset of the key, the kind of the value and
+ * the value: the bits of an int, long or double, or the offset and length of
+ * the bytes of a string or other object;</li>
+ * <li>the keys, each as an unsigned short length followed by its UTF-8 bytes,
+ * and the bytes of the values: UTF-8 for strings, Java serialization for
+ * other objects.</li>
+ * </ul>
+ * <p>
+ * All offsets are relative to the start of the bundle. A bundle is written in
+ * this layout by {@link #write(TypedBundle, ByteBuffer)}.
+ * </p>
+ * 
+ * <p>
+ * Values put in a BufferBundle are kept next to the buffer, which is never
+ * modified. Reading from a BufferBundle nobody puts values in is thread-safe.
+ * A BufferBundle is serialized as a {@link PersistentBundle} holding the same
+ * entries.
+ * </p>
+ * 
+ * @author DEMANES
+ * @version 0.1
+ * @since 18 okt. 2026
+ * 
+ */
+public class BufferBundle implements TypedBundle {
+
+	/**
+	 * An entry prepared for writing.
+	 */
+	private static final class Pending implements Comparable<Pending> {
+
+		/**
+		 * The raw bits of a primitive value.
+		 */
+		private final long bits;
+
+		/**
+		 * The bytes of a string or object value.
+		 */
+		private final byte[] data;
+
+		/**
+		 * The hash code of the key.
+		 */
+		private final int hash;
+
+		/**
+		 * The UTF-8 bytes of the key.
+		 */
+		private final byte[] key;
+
+		/**
+		 * The kind of the value in the layout.
+		 */
+		private final int kind;
+
+		/**
+		 * @param key
+		 *            The key
+		 * @param kind
+		 *            The kind of the value in the layout
+		 * @param bits
+		 *            The raw bits of a primitive value
+		 * @param data
+		 *            The bytes of a string or object value
+		 */
+		Pending(final String key, final int kind, final long bits,
+				final byte[] data) {
+			this.hash = key.hashCode();
+			this.key = key.getBytes(BufferBundle.UTF_8);
+			this.kind = kind;
+			this.bits = bits;
+			this.data = data;
+			if (this.key.length > 0xFFFF) {
+				throw new IllegalArgumentException("Bundle key too long: "
+						+ key.substring(0, 32) + "...");
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int compareTo(final Pending other) {
+			return this.hash < other.hash ? -1 : (this.hash == other.hash ? 0
+					: 1);
+		}
+
+	}
+
+	/**
+	 * Layout kind of a double value.
+	 */
+	private static final int DOUBLE = 3;
+
+	/**
+	 * Size of an entry in the table.
+	 */
+	private static final int ENTRY = 20;
+
+	/**
+	 * Size of the header before the table.
+	 */
+	private static final int HEADER = 8;
+
+	/**
+	 * Layout kind of an int value.
+	 */
+	private static final int INT = 1;
+
+	/**
+	 * Layout kind of a long value.
+	 */
+	private static final int LONG = 2;
+
+	/**
+	 * Layout kind of a null value.
+	 */
+	private static final int NULL = 0;
+
+	/**
+	 * Layout kind of an object value in Java serialization.
+	 */
+	private static final int OBJECT = 4;
+
+	/**
+	 * For serialization purposes.
+	 */
+	private static final long serialVersionUID = 2212417312745925361L;
+
+	/**
+	 * Layout kind of a string value.
+	 */
+	private static final int STRING = 5;
+
+	/**
+	 * The encoding of keys and strings.
+	 */
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	/**
+	 * Write the bundle into a new buffer.
+	 * 
+	 * @param bundle
+	 *            The bundle to write
+	 * @return A heap buffer holding the bundle, from its position to its limit
+	 * @throws IOException
+	 *             If an object value can't be serialized
+	 */
+	public static ByteBuffer encode(final TypedBundle bundle)
+			throws IOException {
+		final Pending[] entries = BufferBundle.prepare(bundle);
+		final ByteBuffer buf = ByteBuffer.allocate(BufferBundle
+				.length(entries));
+		BufferBundle.write(entries, buf);
+		buf.flip();
+		return buf;
+	}
+
+	/**
+	 * Get the number of bytes of the bundle in the layout.
+	 * 
+	 * @param entries
+	 *            The entries of the bundle
+	 * @return The length of the bundle
+	 */
+	private static int length(final Pending[] entries) {
+		int length = BufferBundle.HEADER + entries.length * BufferBundle.ENTRY;
+		for (Pending entry : entries) {
+			length += 2 + entry.key.length;
+			if (entry.data != null) {
+				length += entry.data.length;
+			}
+		}
+		return length;
+	}
+
+	/**
+	 * Convert the entries of a bundle to their layout.
+	 * 
+	 * @param bundle
+	 *            The bundle
+	 * @return The entries, sorted on the hash code of their key
+	 * @throws IOException
+	 *             If an object value can't be serialized
+	 */
+	private static Pending[] prepare(final TypedBundle bundle)
+			throws IOException {
+		final Set<String> keys = bundle.keySet();
+		final Pending[] entries = new Pending[keys.size()];
+		int i = 0;
+		for (String key : keys) {
+			final Object value;
+			try {
+				value = bundle.get(key);
+			} catch (NonExistentKeyException e) {
+				throw new IllegalStateException(e);
+			}
+			if (value == null) {
+				entries[i++] = new Pending(key, BufferBundle.NULL, 0L, null);
+			} else if (value instanceof Integer || value instanceof Long) {
+				entries[i++] = new Pending(key,
+						value instanceof Integer ? BufferBundle.INT
+								: BufferBundle.LONG,
+						((Number) value).longValue(), null);
+			} else if (value instanceof Double) {
+				entries[i++] = new Pending(key, BufferBundle.DOUBLE,
+						Double.doubleToRawLongBits((Double) value), null);
+			} else if (value instanceof String) {
+				entries[i++] = new Pending(key, BufferBundle.STRING, 0L,
+						((String) value).getBytes(BufferBundle.UTF_8));
+			} else {
+				final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				final ObjectOutputStream out = new ObjectOutputStream(bytes);
+				out.writeObject(value);
+				out.close();
+				entries[i++] = new Pending(key, BufferBundle.OBJECT, 0L,
+						bytes.toByteArray());
+			}
+		}
+		Arrays.sort(entries);
+		return entries;
+	}
+
+	/**
+	 * Read the bundle at the position of the buffer, and move the position
+	 * past it. The returned bundle reads from the same content as the buffer.
+	 * 
+	 * @param buf
+	 *            The buffer holding the bundle
+	 * @return A view of the bundle
+	 * @throws IllegalArgumentException
+	 *             If the buffer does not hold a complete bundle
+	 */
+	public static BufferBundle read(final ByteBuffer buf) {
+		final BufferBundle bundle = new BufferBundle(buf);
+		buf.position(buf.position() + bundle.buf.limit());
+		return bundle;
+	}
+
+	/**
+	 * Write the bundle at the position of the buffer, and move the position
+	 * past it.
+	 * 
+	 * @param bundle
+	 *            The bundle to write
+	 * @param buf
+	 *            The buffer to write to
+	 * @throws IOException
+	 *             If an object value can't be serialized
+	 * @throws BufferOverflowException
+	 *             If the bundle does not fit in the buffer
+	 */
+	public static void write(final TypedBundle bundle, final ByteBuffer buf)
+			throws IOException {
+		final Pending[] entries = BufferBundle.prepare(bundle);
+		if (BufferBundle.length(entries) > buf.remaining()) {
+			throw new BufferOverflowException();
+		}
+		BufferBundle.write(entries, buf);
+	}
+
+	/**
+	 * Write the prepared entries at the position of the buffer.
+	 * 
+	 * @param entries
+	 *            The entries, sorted on the hash code of their key
+	 * @param buf
+	 *            The buffer to write to
+	 */
+	private static void write(final Pending[] entries, final ByteBuffer buf) {
+		final int start = buf.position();
+		buf.putInt(BufferBundle.length(entries));
+		buf.putInt(entries.length);
+		int data = BufferBundle.HEADER + entries.length * BufferBundle.ENTRY;
+		for (Pending entry : entries) {
+			buf.putInt(entry.hash);
+			buf.putInt(data);
+			buf.putInt(entry.kind);
+			data += 2 + entry.key.length;
+			if (entry.data == null) {
+				buf.putLong(entry.bits);
+			} else {
+				buf.putLong(((long) data << 32) | entry.data.length);
+				data += entry.data.length;
+			}
+		}
+		for (Pending entry : entries) {
+			buf.putShort((short) entry.key.length);
+			buf.put(entry.key);
+			if (entry.data != null) {
+				buf.put(entry.data);
+			}
+		}
+		assert buf.position() - start == data;
+	}
+
+	/**
+	 * The bundle in the layout, from index 0 to the limit.
+	 */
+	private final transient ByteBuffer buf;
+
+	/**
+	 * The values put in this bundle, or null if there are none.
+	 */
+	private transient PersistentBundle changes;
+
+	/**
+	 * The number of entries in the buffer.
+	 */
+	private final transient int count;
+
+	/**
+	 * Create a view of the bundle at the position of the buffer. The position
+	 * of the buffer is not changed.
+	 * 
+	 * @param buf
+	 *            The buffer holding the bundle
+	 * @throws IllegalArgumentException
+	 *             If the buffer does not hold a complete bundle
+	 */
+	public BufferBundle(final ByteBuffer buf) {
+		final int start = buf.position();
+		if (buf.remaining() < BufferBundle.HEADER) {
+			throw new IllegalArgumentException("Truncated bundle header");
+		}
+		final int length = buf.getInt(start);
+		this.count = buf.getInt(start + 4);
+		if (length < BufferBundle.HEADER || length > buf.remaining()
+				|| this.count < 0
+				|| this.count > (length - BufferBundle.HEADER)
+						/ BufferBundle.ENTRY) {
+			throw new IllegalArgumentException("Invalid bundle of " + length
+					+ " bytes with " + this.count + " entries");
+		}
+		final ByteBuffer view = buf.duplicate();
+		view.limit(start + length);
+		this.buf = view.slice();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public BufferBundle clone() {
+		final BufferBundle clone;
+		try {
+			clone = (BufferBundle) super.clone();
+		} catch (CloneNotSupportedException e) {
+			throw new IllegalStateException(e);
+		}
+		if (this.changes != null) {
+			clone.changes = this.changes.clone();
+		}
+		return clone;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean containsKey(final String key) {
+		if (this.changes != null && this.changes.containsKey(key)) {
+			return true;
+		}
+		return this.find(key) >= 0;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public <T> boolean containsKey(final String key, final Class<T> clazz) {
+		if (this.changes != null && this.changes.containsKey(key)) {
+			return this.changes.containsKey(key, clazz);
+		}
+		final int entry = this.find(key);
+		if (entry < 0) {
+			return false;
+		}
+		final Class<?> type = this.typeOf(entry);
+		return type != null && BundleValues.wrap(clazz).isAssignableFrom(type);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Object get(final String key) throws NonExistentKeyException {
+		if (this.changes != null && this.changes.containsKey(key)) {
+			return this.changes.get(key);
+		}
+		final int entry = this.entry(key);
+		final long value = this.buf.getLong(entry + 12);
+		switch (this.buf.getInt(entry + 8)) {
+		case INT:
+			return Integer.valueOf((int) value);
+		case LONG:
+			return Long.valueOf(value);
+		case DOUBLE:
+			return Double.valueOf(Double.longBitsToDouble(value));
+		case STRING:
+			return this.string((int) (value >>> 32), (int) value);
+		case OBJECT:
+			return this.object((int) (value >>> 32), (int) value);
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> T get(final String key, final Class<T> clazz)
+			throws TypedRequestException, NonExistentKeyException {
+		final Object value = this.get(key);
+		if (value == null) {
+			return null;
+		}
+		if (!BundleValues.wrap(clazz).isInstance(value)) {
+			throw new TypedRequestException(value.getClass(), clazz);
+		}
+		return (T) value;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public double getDouble(final String key) throws TypedRequestException,
+			NonExistentKeyException {
+		if (this.changes != null && this.changes.containsKey(key)) {
+			return this.changes.getDouble(key);
+		}
+		final int entry = this.entry(key);
+		switch (this.buf.getInt(entry + 8)) {
+		case INT:
+		case LONG:
+			return this.buf.getLong(entry + 12);
+		case DOUBLE:
+			return Double.longBitsToDouble(this.buf.getLong(entry + 12));
+		default:
+			throw this.mismatch(entry, double.class);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getInt(final String key) throws TypedRequestException,
+			NonExistentKeyException {
+		if (this.changes != null && this.changes.containsKey(key)) {
+			return this.changes.getInt(key);
+		}
+		final int entry = this.entry(key);
+		if (this.buf.getInt(entry + 8) != INT) {
+			throw this.mismatch(entry, int.class);
+		}
+		return (int) this.buf.getLong(entry + 12);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long getLong(final String key) throws TypedRequestException,
+			NonExistentKeyException {
+		if (this.changes != null && this.changes.containsKey(key)) {
+			return this.changes.getLong(key);
+		}
+		final int entry = this.entry(key);
+		final int kind = this.buf.getInt(entry + 8);
+		if (kind != INT && kind != LONG) {
+			throw this.mismatch(entry, long.class);
+		}
+		return this.buf.getLong(entry + 12);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Class<?> getType(final String key) throws NonExistentKeyException {
+		if (this.changes != null && this.changes.containsKey(key)) {
+			return this.changes.getType(key);
+		}
+		return this.typeOf(this.entry(key));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Set<String> keySet() {
+		final Set<String> keys = new HashSet<String>();
+		for (int i = 0; i < this.count; ++i) {
+			final int key = this.buf.getInt(BufferBundle.HEADER + i
+					* BufferBundle.ENTRY + 4);
+			keys.add(this.string(key + 2, this.keyLength(key)));
+		}
+		if (this.changes != null) {
+			keys.addAll(this.changes.keySet());
+		}
+		return Collections.unmodifiableSet(keys);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void put(final String key, final Serializable val) {
+		this.changes().put(key, val);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void putDouble(final String key, final double val) {
+		this.changes().putDouble(key, val);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void putInt(final String key, final int val) {
+		this.changes().putInt(key, val);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void putLong(final String key, final long val) {
+		this.changes().putLong(key, val);
+	}
+
+	/**
+	 * Get the bundle of values put in this bundle, creating it if needed.
+	 * 
+	 * @return The values put in this bundle
+	 */
+	private PersistentBundle changes() {
+		if (this.changes == null) {
+			this.changes = new PersistentBundle();
+		}
+		return this.changes;
+	}
+
+	/**
+	 * Find the table entry of a key that must be in the buffer.
+	 * 
+	 * @param key
+	 *            The key to find
+	 * @return The offset of the table entry
+	 * @throws NonExistentKeyException
+	 *             If the key is not in the buffer
+	 */
+	private int entry(final String key) throws NonExistentKeyException {
+		final int entry = this.find(key);
+		if (entry < 0) {
+			throw new NonExistentKeyException(key);
+		}
+		return entry;
+	}
+
+	/**
+	 * Find the table entry of the key, by a binary search on its hash code.
+	 * 
+	 * @param key
+	 *            The key to find
+	 * @return The offset of the table entry, or -1 if the key is not in the
+	 *         buffer
+	 */
+	private int find(final String key) {
+		if (key == null) {
+			throw new IllegalArgumentException("Bundle keys must be non-null");
+		}
+		final int hash = key.hashCode();
+		int low = 0;
+		int high = this.count - 1;
+		while (low <= high) {
+			final int mid = (low + high) >>> 1;
+			final int found = this.buf.getInt(BufferBundle.HEADER + mid
+					* BufferBundle.ENTRY);
+			if (found < hash) {
+				low = mid + 1;
+			} else if (found > hash) {
+				high = mid - 1;
+			} else {
+				low = mid;
+				while (low > 0
+						&& this.buf.getInt(BufferBundle.HEADER + (low - 1)
+								* BufferBundle.ENTRY) == hash) {
+					--low;
+				}
+				for (int i = low; i < this.count; ++i) {
+					final int entry = BufferBundle.HEADER + i
+							* BufferBundle.ENTRY;
+					if (this.buf.getInt(entry) != hash) {
+						break;
+					}
+					if (this.matches(this.buf.getInt(entry + 4), key)) {
+						return entry;
+					}
+				}
+				break;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Does the key in the buffer equal the given key? Keys in ASCII are
+	 * compared without decoding the key in the buffer.
+	 * 
+	 * @param offset
+	 *            The offset of the key in the buffer
+	 * @param key
+	 *            The key to compare with
+	 * @return Yes or no
+	 */
+	private boolean matches(final int offset, final String key) {
+		final int length = this.keyLength(offset);
+		this.check(offset + 2, length);
+		for (int i = 0; i < key.length(); ++i) {
+			final char chr = key.charAt(i);
+			if (chr >= 0x80) {
+				return key.equals(this.string(offset + 2, length));
+			}
+			if (i >= length || this.buf.get(offset + 2 + i) != (byte) chr) {
+				return false;
+			}
+		}
+		return length == key.length();
+	}
+
+	/**
+	 * Get the length of a key in the buffer.
+	 * 
+	 * @param offset
+	 *            The offset of the key in the buffer
+	 * @return The number of bytes of the key
+	 * @throws IllegalArgumentException
+	 *             If the key is not within the bundle
+	 */
+	private int keyLength(final int offset) {
+		this.check(offset, 2);
+		return this.buf.getShort(offset) & 0xFFFF;
+	}
+
+	/**
+	 * Create the exception for a request of a type the value does not have.
+	 * 
+	 * @param entry
+	 *            The offset of the table entry of the value
+	 * @param requested
+	 *            The type requested
+	 * @return The exception to throw
+	 */
+	private TypedRequestException mismatch(final int entry,
+			final Class<?> requested) {
+		final Class<?> type = this.typeOf(entry);
+		return new TypedRequestException(type == null ? Void.class : type,
+				requested);
+	}
+
+	/**
+	 * Deserialize an object value from the buffer.
+	 * 
+	 * @param offset
+	 *            The offset of the bytes of the value
+	 * @param length
+	 *            The number of bytes of the value
+	 * @return The value
+	 */
+	private Object object(final int offset, final int length) {
+		try {
+			final ObjectInputStream in = new ObjectInputStream(
+					new ByteArrayInputStream(this.bytes(offset, length)));
+			return in.readObject();
+		} catch (IOException e) {
+			throw new IllegalStateException("Corrupt bundle value", e);
+		} catch (ClassNotFoundException e) {
+			throw new IllegalStateException("Unknown bundle value type", e);
+		}
+	}
+
+	/**
+	 * Check that a range of bytes read from the table lies within the bundle,
+	 * so that a corrupt table can not read past it.
+	 * 
+	 * @param offset
+	 *            The offset of the first byte
+	 * @param length
+	 *            The number of bytes
+	 * @throws IllegalArgumentException
+	 *             If the range is not within the bundle
+	 */
+	private void check(final int offset, final int length) {
+		if (offset < BufferBundle.HEADER || length < 0
+				|| offset > this.buf.limit() - length) {
+			throw new IllegalArgumentException("Corrupt bundle: " + length
+					+ " bytes at " + offset + " exceed the "
+					+ this.buf.limit() + " bytes of the bundle");
+		}
+	}
+
+	/**
+	 * Get bytes from the buffer.
+	 * 
+	 * @param offset
+	 *            The offset of the first byte
+	 * @param length
+	 *            The number of bytes
+	 * @return The bytes
+	 */
+	private byte[] bytes(final int offset, final int length) {
+		this.check(offset, length);
+		final byte[] bytes = new byte[length];
+		final ByteBuffer view = this.buf.duplicate();
+		view.position(offset);
+		view.get(bytes);
+		return bytes;
+	}
+
+	/**
+	 * Decode a UTF-8 string from the buffer.
+	 * 
+	 * @param offset
+	 *            The offset of the bytes of the string
+	 * @param length
+	 *            The number of bytes of the string
+	 * @return The string
+	 */
+	private String string(final int offset, final int length) {
+		this.check(offset, length);
+		if (this.buf.hasArray()) {
+			return new String(this.buf.array(), this.buf.arrayOffset()
+					+ offset, length, BufferBundle.UTF_8);
+		}
+		return new String(this.bytes(offset, length), BufferBundle.UTF_8);
+	}
+
+	/**
+	 * Get the class of a value in the buffer. The class of an object value is
+	 * only known after deserializing it.
+	 * 
+	 * @param entry
+	 *            The offset of the table entry of the value
+	 * @return The class of the value, or null for a null value
+	 */
+	private Class<?> typeOf(final int entry) {
+		switch (this.buf.getInt(entry + 8)) {
+		case INT:
+			return Integer.class;
+		case LONG:
+			return Long.class;
+		case DOUBLE:
+			return Double.class;
+		case STRING:
+			return String.class;
+		case OBJECT:
+			final long value = this.buf.getLong(entry + 12);
+			return this.object((int) (value >>> 32), (int) value).getClass();
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * Serialize this bundle as a PersistentBundle with the same entries.
+	 * 
+	 * @return The object to serialize instead of this one
+	 * @throws ObjectStreamException
+	 *             If a value can't be read
+	 */
+	private Object writeReplace() throws ObjectStreamException {
+		final PersistentBundle copy = new PersistentBundle();
+		try {
+			for (String key : this.keySet()) {
+				copy.put(key, (Serializable) this.get(key));
+			}
+		} catch (NonExistentKeyException e) {
+			throw new IllegalStateException(e);
+		}
+		return copy;
+	}
+
+}
@@ -0,0 +1,172 @@
+/**
+ * File BundleValues.java
+ * Created by DEMANES
+ * 
+ * This file was created for the DEMANES project 2014.
+ * 
+ * Copyright 2014 TNO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.artemis.demanes.datatypes;
+
+import java.io.Serializable;
+
+/**
+ * BundleValues
+ * 
+ * The kinds of values held by the {@link TypedBundle} implementations, and
+ * the conversions between a kind with its raw bits and the object value.
+ * 
+ * @author DEMANES
+ * @version 0.1
+ * @since 18 okt. 2026
+ * 
+ */
+final class BundleValues {
+
+	/**
+	 * Kind of a double value, held in its raw bits.
+	 */
+	static final byte DOUBLE = 3;
+
+	/**
+	 * Kind of an unused slot.
+	 */
+	static final byte FREE = 0;
+
+	/**
+	 * Kind of an int value, held in its bits.
+	 */
+	static final byte INT = 1;
+
+	/**
+	 * Kind of a long value, held in its bits.
+	 */
+	static final byte LONG = 2;
+
+	/**
+	 * Kind of an object value.
+	 */
+	static final byte OBJECT = 4;
+
+	/**
+	 * Get the object value of a primitive held in raw bits.
+	 * 
+	 * @param kind
+	 *            The kind of the value
+	 * @param bits
+	 *            The raw bits of a primitive value
+	 * @param value
+	 *            The object value, for the object kind
+	 * @return The value, boxed if it is a primitive
+	 */
+	static Object box(final byte kind, final long bits, final Object value) {
+		switch (kind) {
+		case INT:
+			return Integer.valueOf((int) bits);
+		case LONG:
+			return Long.valueOf(bits);
+		case DOUBLE:
+			return Double.valueOf(Double.longBitsToDouble(bits));
+		default:
+			return value;
+		}
+	}
+
+	/**
+	 * Get the kind under which a value is stored.
+	 * 
+	 * @param val
+	 *            The value
+	 * @return The kind of primitive it is stored as, or the object kind
+	 */
+	static byte kindOf(final Serializable val) {
+		if (val instanceof Integer) {
+			return INT;
+		} else if (val instanceof Long) {
+			return LONG;
+		} else if (val instanceof Double) {
+			return DOUBLE;
+		}
+		return OBJECT;
+	}
+
+	/**
+	 * Get the raw bits under which a value is stored.
+	 * 
+	 * @param kind
+	 *            The kind of the value, as by {@link #kindOf(Serializable)}
+	 * @param val
+	 *            The value
+	 * @return The raw bits of a primitive, or 0 for an object
+	 */
+	static long rawOf(final byte kind, final Serializable val) {
+		switch (kind) {
+		case INT:
+		case LONG:
+			return ((Number) val).longValue();
+		case DOUBLE:
+			return Double.doubleToRawLongBits(((Double) val).doubleValue());
+		default:
+			return 0L;
+		}
+	}
+
+	/**
+	 * Get the class of a value.
+	 * 
+	 * @param kind
+	 *            The kind of the value
+	 * @param value
+	 *            The object value, for the object kind
+	 * @return The class of the value, or null for a null value
+	 */
+	static Class<?> typeOf(final byte kind, final Object value) {
+		switch (kind) {
+		case INT:
+			return Integer.class;
+		case LONG:
+			return Long.class;
+		case DOUBLE:
+			return Double.class;
+		default:
+			return value == null ? null : value.getClass();
+		}
+	}
+
+	/**
+	 * Get the wrapper class of a primitive class.
+	 * 
+	 * @param clazz
+	 *            Any class
+	 * @return The wrapper class if clazz is primitive, clazz otherwise
+	 */
+	static Class<?> wrap(final Class<?> clazz) {
+		if (clazz == int.class) {
+			return Integer.class;
+		} else if (clazz == long.class) {
+			return Long.class;
+		} else if (clazz == double.class) {
+			return Double.class;
+		}
+		return clazz;
+	}
+
+	/**
+	 * Utility class.
+	 */
+	private BundleValues() {
+	}
+
+}
@@ -0,0 +1,647 @@
+/**
+ * File PersistentBundle.java
+ * Created by DEMANES
+ * 
+ * This file was created for the DEMANES project 2014.
+ * 
+ * Copyright 2014 TNO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.artemis.demanes.datatypes;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import eu.artemis.demanes.exceptions.NonExistentKeyException;
+import eu.artemis.demanes.exceptions.TypedRequestException;
+
+/**
+ * PersistentBundle
+ * 
+ * A {@link TypedBundle} whose entries are kept in a hash array mapped trie of
+ * immutable nodes. Clones share the trie, so {@link #clone()} takes constant
+ * time and memory whatever the size of the bundle. Putting a value copies
+ * only the nodes on the path to its key, so a clone that is changed in a few
+ * keys shares all other entries with the bundle it was cloned from.
+ * 
+ * <p>
+ * This makes it the bundle of choice for large sets of parameters that are
+ * cloned for every task activation or action invocation. Like the other
+ * bundles, it shares the object values with its clones, and it is not
+ * thread-safe; a clone, however, may be handed to another thread.
+ * </p>
+ * 
+ * @author DEMANES
+ * @version 0.1
+ * @since 18 okt. 2026
+ * 
+ */
+public class PersistentBundle implements TypedBundle {
+
+	/**
+	 * An immutable key and value pair.
+	 */
+	private static final class Entry {
+
+		/**
+		 * The raw bits of a primitive value.
+		 */
+		private final long bits;
+
+		/**
+		 * The hash code of the key.
+		 */
+		private final int hash;
+
+		/**
+		 * The key.
+		 */
+		private final String key;
+
+		/**
+		 * The kind of the value.
+		 */
+		private final byte kind;
+
+		/**
+		 * The object value.
+		 */
+		private final Serializable value;
+
+		/**
+		 * @param key
+		 *            The key
+		 * @param kind
+		 *            The kind of the value
+		 * @param bits
+		 *            The raw bits of a primitive value
+		 * @param value
+		 *            An object value
+		 */
+		Entry(final String key, final byte kind, final long bits,
+				final Serializable value) {
+			this.key = key;
+			this.hash = key.hashCode();
+			this.kind = kind;
+			this.bits = bits;
+			this.value = value;
+		}
+
+	}
+
+	/**
+	 * An immutable node of the trie. Its slots hold entries and child nodes,
+	 * in the order of the bits set in the bitmap. Below the last level of
+	 * hash bits, a node holds the entries whose keys have equal hashes, and
+	 * its bitmap is unused.
+	 */
+	private static final class Node {
+
+		/**
+		 * The hash fragments present in this node.
+		 */
+		private final int bitmap;
+
+		/**
+		 * The entries and child nodes.
+		 */
+		private final Object[] slots;
+
+		/**
+		 * @param bitmap
+		 *            The hash fragments present in this node
+		 * @param slots
+		 *            The entries and child nodes
+		 */
+		Node(final int bitmap, final Object... slots) {
+			this.bitmap = bitmap;
+			this.slots = slots;
+		}
+
+	}
+
+	/**
+	 * The number of hash bits consumed per level of the trie.
+	 */
+	private static final int BITS = 5;
+
+	/**
+	 * The root of an empty bundle.
+	 */
+	private static final Node EMPTY = new Node(0);
+
+	/**
+	 * Mask of the hash bits of one level.
+	 */
+	private static final int MASK = (1 << PersistentBundle.BITS) - 1;
+
+	/**
+	 * For serialization purposes.
+	 */
+	private static final long serialVersionUID = 8176513985617924331L;
+
+	/**
+	 * Collect the keys of a subtrie.
+	 * 
+	 * @param node
+	 *            The root of the subtrie
+	 * @param keys
+	 *            The set to add the keys to
+	 */
+	private static void collect(final Node node, final Set<String> keys) {
+		for (Object slot : node.slots) {
+			if (slot instanceof Entry) {
+				keys.add(((Entry) slot).key);
+			} else {
+				PersistentBundle.collect((Node) slot, keys);
+			}
+		}
+	}
+
+	/**
+	 * Get the bit of the hash fragment at the given level.
+	 * 
+	 * @param hash
+	 *            The hash of a key
+	 * @param shift
+	 *            The position of the fragment in the hash
+	 * @return The bitmap bit of the fragment
+	 */
+	private static int fragment(final int hash, final int shift) {
+		return 1 << ((hash >>> shift) & PersistentBundle.MASK);
+	}
+
+	/**
+	 * Create a copy of a subtrie with the entry put into it.
+	 * 
+	 * @param node
+	 *            The root of the subtrie
+	 * @param entry
+	 *            The entry to put, replacing an entry with an equal key
+	 * @param shift
+	 *            The position of the hash fragment of the level of the node
+	 * @return The root of the new subtrie
+	 */
+	private static Node insert(final Node node, final Entry entry,
+			final int shift) {
+		if (shift >= Integer.SIZE) {
+			for (int i = 0; i < node.slots.length; ++i) {
+				if (entry.key.equals(((Entry) node.slots[i]).key)) {
+					return new Node(0, PersistentBundle.replace(node.slots, i,
+							entry));
+				}
+			}
+			return new Node(0, PersistentBundle.insert(node.slots,
+					node.slots.length, entry));
+		}
+		final int bit = PersistentBundle.fragment(entry.hash, shift);
+		final int pos = Integer.bitCount(node.bitmap & (bit - 1));
+		if ((node.bitmap & bit) == 0) {
+			return new Node(node.bitmap | bit, PersistentBundle.insert(
+					node.slots, pos, entry));
+		}
+		final Object slot = node.slots[pos];
+		final Object replacement;
+		if (slot instanceof Node) {
+			replacement = PersistentBundle.insert((Node) slot, entry, shift
+					+ PersistentBundle.BITS);
+		} else if (entry.key.equals(((Entry) slot).key)) {
+			replacement = entry;
+		} else {
+			replacement = PersistentBundle.merge((Entry) slot, entry, shift
+					+ PersistentBundle.BITS);
+		}
+		return new Node(node.bitmap, PersistentBundle.replace(node.slots, pos,
+				replacement));
+	}
+
+	/**
+	 * Create a copy of an array with an element inserted.
+	 * 
+	 * @param slots
+	 *            The array
+	 * @param pos
+	 *            The position of the new element
+	 * @param slot
+	 *            The new element
+	 * @return The new array
+	 */
+	private static Object[] insert(final Object[] slots, final int pos,
+			final Object slot) {
+		final Object[] copy = new Object[slots.length + 1];
+		System.arraycopy(slots, 0, copy, 0, pos);
+		copy[pos] = slot;
+		System.arraycopy(slots, pos, copy, pos + 1, slots.length - pos);
+		return copy;
+	}
+
+	/**
+	 * Create the subtrie holding two entries with different keys.
+	 * 
+	 * @param first
+	 *            An entry
+	 * @param second
+	 *            Another entry
+	 * @param shift
+	 *            The position of the hash fragment of the level of the new
+	 *            node
+	 * @return The root of the subtrie
+	 */
+	private static Node merge(final Entry first, final Entry second,
+			final int shift) {
+		if (shift >= Integer.SIZE) {
+			return new Node(0, first, second);
+		}
+		final int a = (first.hash >>> shift) & PersistentBundle.MASK;
+		final int b = (second.hash >>> shift) & PersistentBundle.MASK;
+		if (a == b) {
+			return new Node(1 << a, PersistentBundle.merge(first, second, shift
+					+ PersistentBundle.BITS));
+		} else if (a < b) {
+			return new Node((1 << a) | (1 << b), first, second);
+		}
+		return new Node((1 << a) | (1 << b), second, first);
+	}
+
+	/**
+	 * Create the exception for a request of a type the value does not have.
+	 * 
+	 * @param entry
+	 *            The entry of the value
+	 * @param requested
+	 *            The type requested
+	 * @return The exception to throw
+	 */
+	private static TypedRequestException mismatch(final Entry entry,
+			final Class<?> requested) {
+		final Class<?> type = BundleValues.typeOf(entry.kind, entry.value);
+		return new TypedRequestException(type == null ? Void.class : type,
+				requested);
+	}
+
+	/**
+	 * Create a copy of an array with an element replaced.
+	 * 
+	 * @param slots
+	 *            The array
+	 * @param pos
+	 *            The position of the element to replace
+	 * @param slot
+	 *            The new element
+	 * @return The new array
+	 */
+	private static Object[] replace(final Object[] slots, final int pos,
+			final Object slot) {
+		final Object[] copy = slots.clone();
+		copy[pos] = slot;
+		return copy;
+	}
+
+	/**
+	 * Write the entries of a subtrie.
+	 * 
+	 * @param node
+	 *            The root of the subtrie
+	 * @param out
+	 *            The stream to write to
+	 * @throws IOException
+	 *             If the stream can't be written
+	 */
+	private static void write(final Node node, final ObjectOutputStream out)
+			throws IOException {
+		for (Object slot : node.slots) {
+			if (slot instanceof Entry) {
+				final Entry entry = (Entry) slot;
+				out.writeObject(entry.key);
+				out.writeObject(BundleValues.box(entry.kind, entry.bits,
+						entry.value));
+			} else {
+				PersistentBundle.write((Node) slot, out);
+			}
+		}
+	}
+
+	/**
+	 * The root of the trie, shared with clones.
+	 */
+	private transient Node root;
+
+	/**
+	 * The number of keys.
+	 */
+	private transient int size;
+
+	/**
+	 * Create an empty bundle.
+	 */
+	public PersistentBundle() {
+		this.root = PersistentBundle.EMPTY;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public PersistentBundle clone() {
+		try {
+			return (PersistentBundle) super.clone();
+		} catch (CloneNotSupportedException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean containsKey(final String key) {
+		return this.find(key) != null;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public <T> boolean containsKey(final String key, final Class<T> clazz) {
+		final Entry entry = this.find(key);
+		if (entry == null) {
+			return false;
+		}
+		final Class<?> type = BundleValues.typeOf(entry.kind, entry.value);
+		return type != null && BundleValues.wrap(clazz).isAssignableFrom(type);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Object get(final String key) throws NonExistentKeyException {
+		final Entry entry = this.entry(key);
+		return BundleValues.box(entry.kind, entry.bits, entry.value);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> T get(final String key, final Class<T> clazz)
+			throws TypedRequestException, NonExistentKeyException {
+		final Object value = this.get(key);
+		if (value == null) {
+			return null;
+		}
+		if (!BundleValues.wrap(clazz).isInstance(value)) {
+			throw new TypedRequestException(value.getClass(), clazz);
+		}
+		return (T) value;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public double getDouble(final String key) throws TypedRequestException,
+			NonExistentKeyException {
+		final Entry entry = this.entry(key);
+		switch (entry.kind) {
+		case BundleValues.INT:
+		case BundleValues.LONG:
+			return entry.bits;
+		case BundleValues.DOUBLE:
+			return Double.longBitsToDouble(entry.bits);
+		default:
+			throw PersistentBundle.mismatch(entry, double.class);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getInt(final String key) throws TypedRequestException,
+			NonExistentKeyException {
+		final Entry entry = this.entry(key);
+		if (entry.kind != BundleValues.INT) {
+			throw PersistentBundle.mismatch(entry, int.class);
+		}
+		return (int) entry.bits;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long getLong(final String key) throws TypedRequestException,
+			NonExistentKeyException {
+		final Entry entry = this.entry(key);
+		if (entry.kind != BundleValues.INT && entry.kind != BundleValues.LONG) {
+			throw PersistentBundle.mismatch(entry, long.class);
+		}
+		return entry.bits;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Class<?> getType(final String key) throws NonExistentKeyException {
+		final Entry entry = this.entry(key);
+		return BundleValues.typeOf(entry.kind, entry.value);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Set<String> keySet() {
+		final Set<String> keys = new HashSet<String>();
+		PersistentBundle.collect(this.root, keys);
+		return Collections.unmodifiableSet(keys);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void put(final String key, final Serializable val) {
+		final byte kind = BundleValues.kindOf(val);
+		if (kind == BundleValues.OBJECT) {
+			this.store(new Entry(key, kind, 0L, val));
+		} else {
+			this.store(new Entry(key, kind, BundleValues.rawOf(kind, val),
+					null));
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void putDouble(final String key, final double val) {
+		this.store(new Entry(key, BundleValues.DOUBLE, Double
+				.doubleToRawLongBits(val), null));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void putInt(final String key, final int val) {
+		this.store(new Entry(key, BundleValues.INT, val, null));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void putLong(final String key, final long val) {
+		this.store(new Entry(key, BundleValues.LONG, val, null));
+	}
+
+	/**
+	 * Get the number of keys in the bundle.
+	 * 
+	 * @return The number of keys
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		final StringBuilder str = new StringBuilder("{");
+		for (String key : this.keySet()) {
+			if (str.length() > 1) {
+				str.append(", ");
+			}
+			final Entry entry = this.find(key);
+			str.append(key).append('=').append(
+					BundleValues.box(entry.kind, entry.bits, entry.value));
+		}
+		return str.append('}').toString();
+	}
+
+	/**
+	 * Find the entry of a key that must be in the bundle.
+	 * 
+	 * @param key
+	 *            The key to find
+	 * @return The entry of the key
+	 * @throws NonExistentKeyException
+	 *             If the key is not in the bundle
+	 */
+	private Entry entry(final String key) throws NonExistentKeyException {
+		final Entry entry = this.find(key);
+		if (entry == null) {
+			throw new NonExistentKeyException(key);
+		}
+		return entry;
+	}
+
+	/**
+	 * Find the entry of the key.
+	 * 
+	 * @param key
+	 *            The key to find
+	 * @return The entry, or null if the key is not in the bundle
+	 */
+	private Entry find(final String key) {
+		if (key == null) {
+			throw new IllegalArgumentException("Bundle keys must be non-null");
+		}
+		final int hash = key.hashCode();
+		Node node = this.root;
+		for (int shift = 0; shift < Integer.SIZE; shift += BITS) {
+			final int bit = PersistentBundle.fragment(hash, shift);
+			if ((node.bitmap & bit) == 0) {
+				return null;
+			}
+			final Object slot = node.slots[Integer.bitCount(node.bitmap
+					& (bit - 1))];
+			if (slot instanceof Entry) {
+				final Entry entry = (Entry) slot;
+				if (entry.hash == hash && key.equals(entry.key)) {
+					return entry;
+				}
+				return null;
+			}
+			node = (Node) slot;
+		}
+		for (Object slot : node.slots) {
+			if (key.equals(((Entry) slot).key)) {
+				return (Entry) slot;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Read the serialized form, which holds the number of keys followed by
+	 * each key and its value.
+	 * 
+	 * @param in
+	 *            The stream to read from
+	 * @throws IOException
+	 *             If the stream can't be read
+	 * @throws ClassNotFoundException
+	 *             If the class of a value can't be found
+	 */
+	private void readObject(final ObjectInputStream in) throws IOException,
+			ClassNotFoundException {
+		in.defaultReadObject();
+		this.root = PersistentBundle.EMPTY;
+		final int count = in.readInt();
+		for (int i = 0; i < count; ++i) {
+			this.put((String) in.readObject(), (Serializable) in.readObject());
+		}
+	}
+
+	/**
+	 * Put the entry into the trie, replacing the entry with the same key.
+	 * 
+	 * @param entry
+	 *            The new entry
+	 */
+	private void store(final Entry entry) {
+		if (this.find(entry.key) == null) {
+			++this.size;
+		}
+		this.root = PersistentBundle.insert(this.root, entry, 0);
+	}
+
+	/**
+	 * Write the serialized form, which holds the number of keys followed by
+	 * each key and its value.
+	 * 
+	 * @param out
+	 *            The stream to write to
+	 * @throws IOException
+	 *             If the stream can't be written
+	 */
+	private void writeObject(final ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		out.writeInt(this.size);
+		PersistentBundle.write(this.root, out);
+	}
+
+}
@@ -0,0 +1,436 @@
+/**
+ * File PrimitiveBundle.java
+ * Created by DEMANES
+ * 
+ * This file was created for the DEMANES project 2014.
+ * 
+ * Copyright 2014 TNO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.artemis.demanes.datatypes;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import eu.artemis.demanes.exceptions.NonExistentKeyException;
+import eu.artemis.demanes.exceptions.TypedRequestException;
+
+
+/**
+ * PrimitiveBundle
+ * 
+ * Reference implementation of {@link TypedBundle}. The keys are kept in an
+ * open-addressing table, and the values in flat arrays next to it: one of
+ * primitive bits and one of objects. Putting or getting a number allocates
+ * nothing, unless the table has to grow.
+ * 
+ * <p>
+ * The class is not thread-safe. {@link #clone()} copies the table, but not
+ * the object values, which are shared with the clone.
+ * </p>
+ * 
+ * @author DEMANES
+ * @version 0.1
+ * @since 18 okt. 2026
+ * 
+ */
+public class PrimitiveBundle implements TypedBundle {
+
+	/**
+	 * For serialization purposes.
+	 */
+	private static final long serialVersionUID = -3207214722045306415L;
+
+	/**
+	 * Get the position in a table of the given length where the search for
+	 * the key starts.
+	 * 
+	 * @param key
+	 *            The key
+	 * @param length
+	 *            The length of the table, a power of two
+	 * @return The first position to probe
+	 */
+	private static int home(final String key, final int length) {
+		final int h = key.hashCode();
+		return (h ^ (h >>> 16)) & (length - 1);
+	}
+
+	/**
+	 * The primitive values, as raw bits.
+	 */
+	private long[] bits;
+
+	/**
+	 * The kind of every slot.
+	 */
+	private byte[] kinds;
+
+	/**
+	 * The keys of the slots.
+	 */
+	private String[] keys;
+
+	/**
+	 * The number of keys.
+	 */
+	private int size;
+
+	/**
+	 * The object values.
+	 */
+	private Serializable[] values;
+
+	/**
+	 * Create an empty bundle.
+	 */
+	public PrimitiveBundle() {
+		this(4);
+	}
+
+	/**
+	 * Create an empty bundle with room for the expected number of keys.
+	 * 
+	 * @param expected
+	 *            The number of keys expected
+	 */
+	public PrimitiveBundle(final int expected) {
+		final int keys = Math.max(expected, 2);
+		this.allocate(Integer.highestOneBit(2 * keys - 1) << 1);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public PrimitiveBundle clone() {
+		final PrimitiveBundle clone;
+		try {
+			clone = (PrimitiveBundle) super.clone();
+		} catch (CloneNotSupportedException e) {
+			throw new IllegalStateException(e);
+		}
+		clone.bits = this.bits.clone();
+		clone.kinds = this.kinds.clone();
+		clone.keys = this.keys.clone();
+		clone.values = this.values.clone();
+		return clone;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean containsKey(final String key) {
+		return this.find(key) >= 0;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public <T> boolean containsKey(final String key, final Class<T> clazz) {
+		final int slot = this.find(key);
+		if (slot < 0) {
+			return false;
+		}
+		final Class<?> type = BundleValues.typeOf(this.kinds[slot],
+				this.values[slot]);
+		return type != null
+				&& BundleValues.wrap(clazz).isAssignableFrom(type);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Object get(final String key) throws NonExistentKeyException {
+		final int slot = this.slot(key);
+		return BundleValues.box(this.kinds[slot], this.bits[slot],
+				this.values[slot]);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> T get(final String key, final Class<T> clazz)
+			throws TypedRequestException, NonExistentKeyException {
+		final Object value = this.get(key);
+		if (value == null) {
+			return null;
+		}
+		if (!BundleValues.wrap(clazz).isInstance(value)) {
+			throw new TypedRequestException(value.getClass(), clazz);
+		}
+		return (T) value;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public double getDouble(final String key) throws TypedRequestException,
+			NonExistentKeyException {
+		final int slot = this.slot(key);
+		switch (this.kinds[slot]) {
+		case BundleValues.INT:
+		case BundleValues.LONG:
+			return this.bits[slot];
+		case BundleValues.DOUBLE:
+			return Double.longBitsToDouble(this.bits[slot]);
+		default:
+			throw this.mismatch(slot, double.class);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getInt(final String key) throws TypedRequestException,
+			NonExistentKeyException {
+		final int slot = this.slot(key);
+		if (this.kinds[slot] != BundleValues.INT) {
+			throw this.mismatch(slot, int.class);
+		}
+		return (int) this.bits[slot];
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long getLong(final String key) throws TypedRequestException,
+			NonExistentKeyException {
+		final int slot = this.slot(key);
+		final byte kind = this.kinds[slot];
+		if (kind != BundleValues.INT && kind != BundleValues.LONG) {
+			throw this.mismatch(slot, long.class);
+		}
+		return this.bits[slot];
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Class<?> getType(final String key) throws NonExistentKeyException {
+		final int slot = this.slot(key);
+		return BundleValues.typeOf(this.kinds[slot], this.values[slot]);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Set<String> keySet() {
+		final Set<String> keys = new HashSet<String>();
+		for (int slot = 0; slot < this.keys.length; ++slot) {
+			if (this.kinds[slot] != BundleValues.FREE) {
+				keys.add(this.keys[slot]);
+			}
+		}
+		return Collections.unmodifiableSet(keys);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void put(final String key, final Serializable val) {
+		final byte kind = BundleValues.kindOf(val);
+		if (kind == BundleValues.OBJECT) {
+			this.store(key, kind, 0L, val);
+		} else {
+			this.store(key, kind, BundleValues.rawOf(kind, val), null);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void putDouble(final String key, final double val) {
+		this.store(key, BundleValues.DOUBLE, Double.doubleToRawLongBits(val),
+				null);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void putInt(final String key, final int val) {
+		this.store(key, BundleValues.INT, val, null);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void putLong(final String key, final long val) {
+		this.store(key, BundleValues.LONG, val, null);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		final StringBuilder str = new StringBuilder("{");
+		for (int slot = 0; slot < this.keys.length; ++slot) {
+			if (this.kinds[slot] == BundleValues.FREE) {
+				continue;
+			}
+			if (str.length() > 1) {
+				str.append(", ");
+			}
+			str.append(this.keys[slot]).append('=');
+			try {
+				str.append(this.get(this.keys[slot]));
+			} catch (NonExistentKeyException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+		return str.append('}').toString();
+	}
+
+	/**
+	 * Allocate empty arrays for a table of the given length.
+	 * 
+	 * @param length
+	 *            The length of the table, a power of two
+	 */
+	private void allocate(final int length) {
+		this.bits = new long[length];
+		this.kinds = new byte[length];
+		this.keys = new String[length];
+		this.values = new Serializable[length];
+	}
+
+	/**
+	 * Find the slot of the key.
+	 * 
+	 * @param key
+	 *            The key to find
+	 * @return The slot of the key, or -1 minus the free slot where it would be
+	 *         stored if it is not in the table
+	 */
+	private int find(final String key) {
+		if (key == null) {
+			throw new IllegalArgumentException("Bundle keys must be non-null");
+		}
+		final int mask = this.keys.length - 1;
+		int slot = PrimitiveBundle.home(key, this.keys.length);
+		while (this.kinds[slot] != BundleValues.FREE) {
+			if (key.equals(this.keys[slot])) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return -slot - 1;
+	}
+
+	/**
+	 * Double the length of the table.
+	 */
+	private void grow() {
+		final long[] bits = this.bits;
+		final byte[] kinds = this.kinds;
+		final String[] keys = this.keys;
+		final Serializable[] values = this.values;
+		this.allocate(keys.length * 2);
+		final int mask = this.keys.length - 1;
+		for (int old = 0; old < keys.length; ++old) {
+			if (kinds[old] == BundleValues.FREE) {
+				continue;
+			}
+			int slot = PrimitiveBundle.home(keys[old], this.keys.length);
+			while (this.kinds[slot] != BundleValues.FREE) {
+				slot = (slot + 1) & mask;
+			}
+			this.bits[slot] = bits[old];
+			this.kinds[slot] = kinds[old];
+			this.keys[slot] = keys[old];
+			this.values[slot] = values[old];
+		}
+	}
+
+	/**
+	 * Create the exception for a request of a type the value does not have.
+	 * 
+	 * @param slot
+	 *            The slot of the value
+	 * @param requested
+	 *            The type requested
+	 * @return The exception to throw
+	 */
+	private TypedRequestException mismatch(final int slot,
+			final Class<?> requested) {
+		final Class<?> type = BundleValues.typeOf(this.kinds[slot],
+				this.values[slot]);
+		return new TypedRequestException(type == null ? Void.class : type,
+				requested);
+	}
+
+	/**
+	 * Find the slot of a key that must be in the bundle.
+	 * 
+	 * @param key
+	 *            The key to find
+	 * @return The slot of the key
+	 * @throws NonExistentKeyException
+	 *             If the key is not in the bundle
+	 */
+	private int slot(final String key) throws NonExistentKeyException {
+		final int slot = this.find(key);
+		if (slot < 0) {
+			throw new NonExistentKeyException(key);
+		}
+		return slot;
+	}
+
+	/**
+	 * Store a value under the key, replacing any value it had.
+	 * 
+	 * @param key
+	 *            The key
+	 * @param kind
+	 *            The kind of the value
+	 * @param raw
+	 *            The bits of a primitive value
+	 * @param val
+	 *            An object value
+	 */
+	private void store(final String key, final byte kind, final long raw,
+			final Serializable val) {
+		int slot = this.find(key);
+		if (slot < 0) {
+			if (2 * (this.size + 1) > this.keys.length) {
+				this.grow();
+				slot = this.find(key);
+			}
+			slot = -slot - 1;
+			this.keys[slot] = key;
+			++this.size;
+		}
+		this.bits[slot] = raw;
+		this.kinds[slot] = kind;
+		this.values[slot] = val;
+	}
+
+}
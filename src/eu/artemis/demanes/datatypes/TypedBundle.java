@@ -0,0 +1,68 @@
+/**
+ * File TypedBundle.java
+ * Created by DEMANES
+ * 
+ * This file was created for the DEMANES project 2014.
+ * 
+ * Copyright 2014 TNO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.artemis.demanes.datatypes;
+
+import java.util.Set;
+
+import eu.artemis.demanes.exceptions.NonExistentKeyException;
+import eu.artemis.demanes.exceptions.TypedRequestException;
+
+/**
+ * TypedBundle
+ * 
+ * An ANES_BUNDLE which stores numeric values as primitives, so that they can
+ * be passed to {@link eu.artemis.demanes.reconfiguration.Action#invoke} or
+ * {@link eu.artemis.demanes.lifecycle.TaskActivator#start} without boxing.
+ * 
+ * <p>
+ * A value put as a primitive is returned by {@link #get(String)} as its
+ * wrapper, and an Integer, Long or Double put as an object can be read with
+ * the primitive getters. The primitive getters apply the widening conversions
+ * of Java, so an int value can be read as a long or a double.
+ * </p>
+ * 
+ * @author DEMANES
+ * @version 0.1
+ * @since 18 okt. 2026
+ * 
+ */
+public interface TypedBundle extends ANES_BUNDLE {
+
+	public TypedBundle clone();
+
+	public double getDouble(String key) throws TypedRequestException,
+			NonExistentKeyException;
+
+	public int getInt(String key) throws TypedRequestException,
+			NonExistentKeyException;
+
+	public long getLong(String key) throws TypedRequestException,
+			NonExistentKeyException;
+
+	public Set<String> keySet();
+
+	public void putDouble(String key, double val);
+
+	public void putInt(String key, int val);
+
+	public void putLong(String key, long val);
+
+}
@@ -30,10 +30,17 @@ package eu.artemis.demanes.datatypes;
  * OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamException;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URLDecoder;
+import java.util.Collections;
 import java.util.Map;
 import java.util.TreeMap;
 
@@ -77,11 +84,9 @@ public final class URN implements Comparable<URN>, Serializable {
 	private static final String PREFIX = "urn";
 
 	/**
-	 * Validating regular expr.
+	 * Maximum length of the NID.
 	 */
-	private static final String REGEX =
-	// @checkstyle LineLength (1 line)
-	"^urn:[a-z]{1,31}(:([\\-a-zA-Z0-9/]|%[0-9a-fA-F]{2})*)+(\\?\\w+(=([\\-a-zA-Z0-9/]|%[0-9a-fA-F]{2})*)?(&\\w+(=([\\-a-zA-Z0-9/]|%[0-9a-fA-F]{2})*)?)*)?\\*?$";
+	private static final int MAX_NID = 31;
 
 	/**
 	 * The separator.
@@ -93,6 +98,13 @@ public final class URN implements Comparable<URN>, Serializable {
 	 */
 	private static final long serialVersionUID = 0xBF46AFCD9612A6DFL;
 
+	/**
+	 * Serialized form, kept as the single URI field of earlier versions so
+	 * that peers running those versions can still exchange URNs with us.
+	 */
+	private static final ObjectStreamField[] serialPersistentFields = { new ObjectStreamField(
+			"uri", URI.class) };
+
 	/**
 	 * The encoding of the URN.
 	 */
@@ -110,6 +122,150 @@ public final class URN implements Comparable<URN>, Serializable {
 				|| (chr >= 'a' && chr <= 'z') || (chr == '/') || (chr == '-');
 	}
 
+	/**
+	 * Is this char a hexadecimal digit?
+	 * 
+	 * @param chr
+	 *            The character
+	 * @return It is a hex digit?
+	 */
+	private static boolean hex(final char chr) {
+		return (chr >= '0' && chr <= '9') || (chr >= 'a' && chr <= 'f')
+				|| (chr >= 'A' && chr <= 'F');
+	}
+
+	/**
+	 * This char is allowed unescaped in URN's NSS part or in a query value?
+	 * 
+	 * @param chr
+	 *            The character
+	 * @return It is allowed?
+	 */
+	private static boolean plain(final char chr) {
+		return (chr >= 'A' && chr <= 'Z') || (chr >= '0' && chr <= '9')
+				|| (chr >= 'a' && chr <= 'z') || (chr == '/') || (chr == '-');
+	}
+
+	/**
+	 * This char is allowed in the name of a query param?
+	 * 
+	 * @param chr
+	 *            The character
+	 * @return It is allowed?
+	 */
+	private static boolean word(final char chr) {
+		return (chr >= 'A' && chr <= 'Z') || (chr >= '0' && chr <= '9')
+				|| (chr >= 'a' && chr <= 'z') || (chr == '_');
+	}
+
+	/**
+	 * Is this a valid NID, i.e. up to 31 low case letters?
+	 * 
+	 * @param nid
+	 *            The NID to check
+	 * @return It is valid?
+	 */
+	private static boolean validNid(final String nid) {
+		final int len = nid.length();
+		if (len == 0 || len > URN.MAX_NID) {
+			return false;
+		}
+		for (int pos = 0; pos < len; ++pos) {
+			final char chr = nid.charAt(pos);
+			if (chr < 'a' || chr > 'z') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Skip a run of plain and percent-escaped characters.
+	 * 
+	 * @param text
+	 *            The text being scanned
+	 * @param from
+	 *            Position of the first character of the run
+	 * @param colons
+	 *            Whether colons are part of the run (as they are in the NSS)
+	 * @return Position of the first character after the run, or -1 if the run
+	 *         contains a malformed escape
+	 */
+	private static int skip(final String text, final int from,
+			final boolean colons) {
+		final int len = text.length();
+		int pos = from;
+		while (pos < len) {
+			final char chr = text.charAt(pos);
+			if (chr == '%') {
+				if (pos + 2 >= len || !URN.hex(text.charAt(pos + 1))
+						|| !URN.hex(text.charAt(pos + 2))) {
+					return -1;
+				}
+				pos += 3;
+			} else if (URN.plain(chr) || (colons && chr == ':')) {
+				++pos;
+			} else {
+				break;
+			}
+		}
+		return pos;
+	}
+
+	/**
+	 * Scan the text in a single pass. The accepted syntax is exactly that of
+	 * the regular expression this class used to validate with:
+	 * 
+	 * <pre>
+	 * ^urn:[a-z]{1,31}(:([\-a-zA-Z0-9/]|%[0-9a-fA-F]{2})*)+
+	 *     (\?\w+(=([\-a-zA-Z0-9/]|%[0-9a-fA-F]{2})*)?
+	 *     (&amp;\w+(=([\-a-zA-Z0-9/]|%[0-9a-fA-F]{2})*)?)*)?\*?$
+	 * </pre>
+	 * 
+	 * @param text
+	 *            The text to scan
+	 * @return Position of the colon that terminates the NID, or -1 if the text
+	 *         is not a valid URN
+	 */
+	private static int scan(final String text) {
+		final int len = text.length();
+		if (!text.startsWith(URN.PREFIX + URN.SEP)) {
+			return -1;
+		}
+		int pos = URN.PREFIX.length() + 1;
+		while (pos < len && text.charAt(pos) >= 'a' && text.charAt(pos) <= 'z') {
+			++pos;
+		}
+		final int colon = pos;
+		final int nid = colon - URN.PREFIX.length() - 1;
+		if (nid == 0 || nid > URN.MAX_NID || pos == len
+				|| text.charAt(pos) != ':') {
+			return -1;
+		}
+		pos = URN.skip(text, pos + 1, true);
+		char sep = '?';
+		while (pos >= 0 && pos < len && text.charAt(pos) == sep) {
+			final int name = ++pos;
+			while (pos < len && URN.word(text.charAt(pos))) {
+				++pos;
+			}
+			if (pos == name) {
+				return -1;
+			}
+			if (pos < len && text.charAt(pos) == '=') {
+				pos = URN.skip(text, pos + 1, false);
+			}
+			sep = '&';
+		}
+		if (pos >= 0 && pos < len && text.charAt(pos) == '*') {
+			++pos;
+		}
+		if (pos != len) {
+			return -1;
+		}
+		return colon;
+	}
+
 	/**
 	 * Creates an instance of URN and throws a runtime exception if its syntax
 	 * is not valid.
@@ -218,20 +374,98 @@ public final class URN implements Comparable<URN>, Serializable {
 	 * @return Yes of no
 	 */
 	public static boolean isValid(final String text) {
-		boolean valid = true;
-		try {
-			new URN(text);
-		} catch (URISyntaxException ex) {
-			valid = false;
+		if (text == null) {
+			return false;
+		}
+		final int colon = URN.scan(text);
+		return colon >= 0 && !URN.voidWithNss(text, colon);
+	}
+
+	/**
+	 * Is the text an empty URN that nevertheless carries an NSS?
+	 * 
+	 * @param text
+	 *            The scanned text
+	 * @param colon
+	 *            Position of the colon that terminates the NID
+	 * @return Yes or no
+	 */
+	private static boolean voidWithNss(final String text, final int colon) {
+		final int start = URN.PREFIX.length() + 1;
+		return colon - start == URN.EMPTY.length()
+				&& text.startsWith(URN.EMPTY, start)
+				&& colon + 1 < text.length();
+	}
+
+	/**
+	 * Scan the text of a URN.
+	 * 
+	 * @param text
+	 *            The text of the URN
+	 * @return Position of the colon that terminates the NID
+	 * @throws URISyntaxException
+	 *             If syntax is not correct
+	 */
+	private static int parse(final String text) throws URISyntaxException {
+		if (text == null) {
+			throw new URISyntaxException(text, "Invalid format of URN");
+		}
+		final int pos = URN.scan(text);
+		if (pos < 0) {
+			throw new URISyntaxException(text, "Invalid format of URN");
+		}
+		if (URN.voidWithNss(text, pos)) {
+			throw new URISyntaxException(text, "Empty URN can't have NSS");
 		}
-		return valid;
+		return pos;
 	}
 
 	/**
-	 * The URI.
+	 * The text of the URN.
+	 */
+	private final transient String text;
+
+	/**
+	 * Position of the colon that terminates the NID.
+	 */
+	private final transient int colon;
+
+	/**
+	 * Position of the question mark that starts the params, or -1 if there
+	 * are none.
+	 */
+	private final transient int query;
+
+	/**
+	 * Namespace ID, extracted on first use.
+	 */
+	private transient String nid;
+
+	/**
+	 * Decoded namespace specific string, extracted on first use.
+	 */
+	private transient String nss;
+
+	/**
+	 * Unmodifiable map of params, decoded on first use.
 	 */
-	// @SuppressWarnings("PMD.BeanMembersShouldSerialize")
-	private final URI uri;
+	private transient Map<String, String> params;
+
+	/**
+	 * This URN without params, created on first use.
+	 */
+	private transient volatile URN pure;
+
+	/**
+	 * Hash code of the text up to the params, computed on first use.
+	 */
+	private transient int pureHash;
+
+	/**
+	 * The text read from the serialized form, which {@link #readResolve()}
+	 * turns into a URN. Only set on instances created by deserialization.
+	 */
+	private transient String serialized;
 
 	/**
 	 * Public constructor (for JAXB mostly) that creates an "empty" URN.
@@ -249,14 +483,9 @@ public final class URN implements Comparable<URN>, Serializable {
 	 *             If syntax is not correct
 	 */
 	public URN(final String text) throws URISyntaxException {
-		if (text == null) {
-			throw new URISyntaxException(text, "Invalid format of URN");
-		}
-		if (!text.matches(URN.REGEX)) {
-			throw new URISyntaxException(text, "Invalid format of URN");
-		}
-		this.uri = new URI(text);
-		this.validate();
+		this.colon = URN.parse(text);
+		this.text = text;
+		this.query = text.indexOf('?', this.colon);
 	}
 
 	/**
@@ -272,13 +501,19 @@ public final class URN implements Comparable<URN>, Serializable {
 			throw new IllegalArgumentException(
 					"Namespace ID (nid) and namespace specific string (nss) must be non-null");
 		}
-		this.uri = URI.create(String.format("%s%s%s%2$s%s", URN.PREFIX,
-				URN.SEP, nid, URN.encode(nss)));
+		if (!URN.validNid(nid)) {
+			throw new IllegalArgumentException(String.format(
+					"NID '%s' can contain up to 31 low case letters", nid));
+		}
+		final String txt = URN.PREFIX + URN.SEP + nid + URN.SEP
+				+ URN.encode(nss);
 		try {
-			this.validate();
+			this.colon = URN.parse(txt);
 		} catch (URISyntaxException ex) {
 			throw new IllegalArgumentException(ex);
 		}
+		this.text = txt;
+		this.query = txt.indexOf('?', this.colon);
 	}
 
 	/**
@@ -286,7 +521,7 @@ public final class URN implements Comparable<URN>, Serializable {
 	 */
 	@Override
 	public int compareTo(final URN urn) {
-		return this.uri.compareTo(urn.uri);
+		return this.text.compareTo(urn.text);
 	}
 
 	/**
@@ -297,8 +532,10 @@ public final class URN implements Comparable<URN>, Serializable {
 		boolean equals;
 		if (obj == this) {
 			equals = true;
+		} else if (obj instanceof URN) {
+			equals = this.text.equals(((URN) obj).text);
 		} else {
-			equals = this.uri.toString().equals(obj.toString());
+			equals = false;
 		}
 		return equals;
 	}
@@ -308,7 +545,7 @@ public final class URN implements Comparable<URN>, Serializable {
 	 */
 	@Override
 	public int hashCode() {
-		return this.uri.hashCode();
+		return this.text.hashCode();
 	}
 
 	/**
@@ -317,7 +554,7 @@ public final class URN implements Comparable<URN>, Serializable {
 	 * @return Has them?
 	 */
 	public boolean hasParams() {
-		return this.toString().contains("?");
+		return this.query >= 0;
 	}
 
 	/**
@@ -341,11 +578,11 @@ public final class URN implements Comparable<URN>, Serializable {
 			throw new IllegalArgumentException("Pattern must be non-null.");
 		}
 		boolean matches = false;
-		if (this.equals(pattern)) {
+		if (this.text.equals(pattern)) {
 			matches = true;
 		} else if (pattern.endsWith("*")) {
 			final String body = pattern.substring(0, pattern.length() - 1);
-			matches = this.uri.toString().startsWith(body);
+			matches = this.text.startsWith(body);
 		}
 		return matches;
 	}
@@ -356,7 +593,12 @@ public final class URN implements Comparable<URN>, Serializable {
 	 * @return Namespace ID
 	 */
 	public String nid() {
-		return this.segment(1);
+		String value = this.nid;
+		if (value == null) {
+			value = this.text.substring(URN.PREFIX.length() + 1, this.colon);
+			this.nid = value;
+		}
+		return value;
 	}
 
 	/**
@@ -365,11 +607,17 @@ public final class URN implements Comparable<URN>, Serializable {
 	 * @return Namespace specific string
 	 */
 	public String nss() {
-		try {
-			return URLDecoder.decode(this.segment(2), URN.UTF_8);
-		} catch (java.io.UnsupportedEncodingException ex) {
-			throw new IllegalStateException(ex);
+		String value = this.nss;
+		if (value == null) {
+			try {
+				value = URLDecoder.decode(this.text.substring(this.colon + 1),
+						URN.UTF_8);
+			} catch (java.io.UnsupportedEncodingException ex) {
+				throw new IllegalStateException(ex);
+			}
+			this.nss = value;
 		}
+		return value;
 	}
 
 	/**
@@ -406,19 +654,24 @@ public final class URN implements Comparable<URN>, Serializable {
 			throw new IllegalArgumentException(
 					"Parameter name and value must be non-null.");
 		}
-		final Map<String, String> params = this.params();
+		final Map<String, String> params = new TreeMap<String, String>(
+				this.params());
 		params.put(name, value.toString());
-		return URN.create(String.format("%s%s",
-				this.toString().split("\\?")[0], URN.enmap(params)));
+		return URN.create(this.body() + URN.enmap(params));
 	}
 
 	/**
 	 * Get all params.
 	 * 
-	 * @return The params
+	 * @return The params, as an unmodifiable map
 	 */
 	public Map<String, String> params() {
-		return URN.demap(this.toString());
+		Map<String, String> value = this.params;
+		if (value == null) {
+			value = Collections.unmodifiableMap(URN.demap(this.text));
+			this.params = value;
+		}
+		return value;
 	}
 
 	/**
@@ -427,29 +680,110 @@ public final class URN implements Comparable<URN>, Serializable {
 	 * @return Clean version of it
 	 */
 	public URN pure() {
-		String urn = this.toString();
+		if (!this.hasParams()) {
+			return this;
+		}
+		URN value = this.pure;
+		if (value == null) {
+			value = URN.create(this.body());
+			this.pure = value;
+		}
+		return value;
+	}
+
+	/**
+	 * Does this URN without params equal the other URN without params? This
+	 * compares the texts up to the params, without creating the pure URNs.
+	 * 
+	 * @param other
+	 *            The other URN
+	 * @return Yes or no
+	 */
+	public boolean pureEquals(final URN other) {
+		final int length = this.bodyLength();
+		return length == other.bodyLength()
+				&& this.text.regionMatches(0, other.text, 0, length);
+	}
+
+	/**
+	 * Get the hash code of this URN without params, which equals the hash
+	 * code of {@link #pure()}, without creating it.
+	 * 
+	 * @return The hash code
+	 */
+	public int pureHashCode() {
+		int hash = this.pureHash;
+		if (hash == 0) {
+			final int length = this.bodyLength();
+			for (int i = 0; i < length; ++i) {
+				hash = 31 * hash + this.text.charAt(i);
+			}
+			this.pureHash = hash;
+		}
+		return hash;
+	}
+
+	/**
+	 * Get the text of the URN up to the params.
+	 * 
+	 * @return The text without params
+	 */
+	private String body() {
 		if (this.hasParams()) {
-			urn = urn.substring(0, urn.indexOf('?'));
+			return this.text.substring(0, this.query);
 		}
-		return URN.create(urn);
+		return this.text;
 	}
 
 	/**
-	 * Get segment by position.
+	 * Get the length of the text of the URN up to the params.
 	 * 
-	 * @param pos
-	 *            Its position
-	 * @return The segment
+	 * @return The length of the text without params
 	 */
-	private String segment(final int pos) {
-		// return StringUtils.splitPreserveAllTokens(this.uri.toString(),
-		// URN.SEP, 3)[pos];
-		// TODO: I can imagine that this code may break. Before it was
-		// implemented with
-		// the line above and apache commons (which gives the
-		// splitPreserveAllTokens, stuff).
-		// Test unit this.
-		return this.uri.toString().split(URN.SEP, 3)[pos];
+	private int bodyLength() {
+		if (this.hasParams()) {
+			return this.query;
+		}
+		return this.text.length();
+	}
+
+	/**
+	 * Read the serialized form, which holds the URN as a URI. The fields of
+	 * a URN are final, so this only keeps the text for {@link #readResolve()}.
+	 * 
+	 * @param in
+	 *            The stream to read from
+	 * @throws IOException
+	 *             If the stream can't be read or holds an invalid URN
+	 * @throws ClassNotFoundException
+	 *             If a class of the serialized form can't be found
+	 */
+	private void readObject(final ObjectInputStream in) throws IOException,
+			ClassNotFoundException {
+		final Object uri = in.readFields().get("uri", null);
+		if (uri == null) {
+			throw new InvalidObjectException("URN without text");
+		}
+		this.serialized = uri.toString();
+	}
+
+	/**
+	 * Replace the deserialized instance by a URN constructed from the text
+	 * it was read with.
+	 * 
+	 * @return The URN
+	 * @throws ObjectStreamException
+	 *             If the text is not a valid URN
+	 */
+	private Object readResolve() throws ObjectStreamException {
+		try {
+			return new URN(this.serialized);
+		} catch (URISyntaxException ex) {
+			final InvalidObjectException invalid = new InvalidObjectException(
+					ex.getMessage());
+			invalid.initCause(ex);
+			throw invalid;
+		}
 	}
 
 	/**
@@ -457,7 +791,7 @@ public final class URN implements Comparable<URN>, Serializable {
 	 */
 	@Override
 	public String toString() {
-		return this.uri.toString();
+		return this.text;
 	}
 
 	/**
@@ -466,25 +800,21 @@ public final class URN implements Comparable<URN>, Serializable {
 	 * @return The URI
 	 */
 	public URI toURI() {
-		return URI.create(this.uri.toString());
+		return URI.create(this.text);
 	}
 
 	/**
-	 * Validate URN.
+	 * Write the serialized form, which holds the URN as a URI.
 	 * 
-	 * @throws URISyntaxException
-	 *             If it's not valid
-	 */
-	private void validate() throws URISyntaxException {
-		if (this.isEmpty() && !this.nss().isEmpty()) {
-			throw new URISyntaxException(this.toString(),
-					"Empty URN can't have NSS");
-		}
-		if (!this.nid().matches("^[a-z]{1,31}$")) {
-			throw new IllegalArgumentException(String.format(
-					"NID '%s' can contain up to 31 low case letters",
-					this.nid()));
-		}
+	 * @param out
+	 *            The stream to write to
+	 * @throws IOException
+	 *             If the stream can't be written
+	 */
+	private void writeObject(final ObjectOutputStream out) throws IOException {
+		final ObjectOutputStream.PutField fields = out.putFields();
+		fields.put("uri", URI.create(this.text));
+		out.writeFields();
 	}
 
 }
@@ -0,0 +1,170 @@
+/**
+ * File URNPattern.java
+ * Created by DEMANES
+ * 
+ * This file was created for the DEMANES project 2014.
+ * 
+ * Copyright 2014 TNO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.artemis.demanes.datatypes;
+
+import java.io.Serializable;
+
+/**
+ * URNPattern
+ * 
+ * A pattern to match URNs against, with the same meaning as the pattern of
+ * {@link URN#matches(String)}: either the exact text of a URN, or a prefix of
+ * it followed by a <code>*</code>. The pattern is analyzed once, when it is
+ * compiled, instead of on every match.
+ * 
+ * @author DEMANES
+ * @version 0.1
+ * @since 18 okt. 2026
+ * 
+ */
+public final class URNPattern implements Serializable {
+
+	/**
+	 * The trailing character of a prefix pattern.
+	 */
+	private static final char WILDCARD = '*';
+
+	/**
+	 * For serialization purposes.
+	 */
+	private static final long serialVersionUID = 4391560962514734541L;
+
+	/**
+	 * Compile the pattern.
+	 * 
+	 * @param pattern
+	 *            The text of the pattern
+	 * @return The compiled pattern
+	 */
+	public static URNPattern compile(final String pattern) {
+		if (pattern == null) {
+			throw new IllegalArgumentException("Pattern must be non-null.");
+		}
+		return new URNPattern(pattern);
+	}
+
+	/**
+	 * The exact text or prefix to match.
+	 */
+	private final String body;
+
+	/**
+	 * The text of the pattern.
+	 */
+	private final String text;
+
+	/**
+	 * Does the pattern match any URN starting with the prefix?
+	 */
+	private final boolean wildcard;
+
+	/**
+	 * Private constructor.
+	 * 
+	 * @param text
+	 *            The text of the pattern
+	 */
+	private URNPattern(final String text) {
+		this.text = text;
+		this.wildcard = !text.isEmpty()
+				&& text.charAt(text.length() - 1) == URNPattern.WILDCARD;
+		if (this.wildcard) {
+			this.body = text.substring(0, text.length() - 1);
+		} else {
+			this.body = text;
+		}
+	}
+
+	/**
+	 * Get the exact text of the URNs this pattern matches, or the prefix of
+	 * them if it is a wildcard pattern.
+	 * 
+	 * @return The text without the wildcard
+	 */
+	public String body() {
+		return this.body;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean equals(final Object obj) {
+		if (obj == this) {
+			return true;
+		}
+		if (!(obj instanceof URNPattern)) {
+			return false;
+		}
+		return this.text.equals(((URNPattern) obj).text);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int hashCode() {
+		return this.text.hashCode();
+	}
+
+	/**
+	 * Does the pattern match all URNs starting with its body?
+	 * 
+	 * @return Yes or no
+	 */
+	public boolean isWildcard() {
+		return this.wildcard;
+	}
+
+	/**
+	 * Does the URN match the pattern?
+	 * 
+	 * @param urn
+	 *            The URN to match
+	 * @return Yes or no
+	 */
+	public boolean matches(final ANES_URN urn) {
+		return this.matches(urn.toString());
+	}
+
+	/**
+	 * Does the URN with the given text match the pattern?
+	 * 
+	 * @param urn
+	 *            The text of the URN to match
+	 * @return Yes or no
+	 */
+	public boolean matches(final String urn) {
+		if (urn.equals(this.text)) {
+			return true;
+		}
+		return this.wildcard && urn.startsWith(this.body);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		return this.text;
+	}
+
+}
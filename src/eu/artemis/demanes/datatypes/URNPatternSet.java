@@ -0,0 +1,381 @@
+/**
+ * File URNPatternSet.java
+ * Created by DEMANES
+ * 
+ * This file was created for the DEMANES project 2014.
+ * 
+ * Copyright 2014 TNO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.artemis.demanes.datatypes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * URNPatternSet
+ * 
+ * A set of {@link URNPattern}s with a handler for each, which finds the
+ * handlers of all patterns matching a URN. The patterns are kept in a prefix
+ * trie on their body, so the time to match a URN is proportional to its
+ * length, whatever the number of patterns.
+ * 
+ * <p>
+ * A set is not thread-safe. A set that is no longer modified after it has
+ * been safely published may be matched against from any number of threads;
+ * the copy constructor helps to publish a modified set in that way.
+ * </p>
+ * 
+ * @param <T>
+ *            The type of the handlers
+ * @author DEMANES
+ * @version 0.1
+ * @since 18 okt. 2026
+ * 
+ */
+public class URNPatternSet<T> {
+
+	/**
+	 * Node of the trie, representing the text on the path from the root.
+	 * 
+	 * @param <T>
+	 *            The type of the handlers
+	 */
+	private static final class Node<T> {
+
+		/**
+		 * Labels of a node without children.
+		 */
+		private static final char[] NO_LABELS = new char[0];
+
+		/**
+		 * The nodes one character further, in the order of their labels.
+		 */
+		private Node<T>[] children;
+
+		/**
+		 * Handlers of the exact pattern equal to the text of this node.
+		 */
+		private List<T> exact;
+
+		/**
+		 * The sorted characters leading to the children.
+		 */
+		private char[] labels = Node.NO_LABELS;
+
+		/**
+		 * Handlers of the wildcard pattern with the text of this node as body.
+		 */
+		private List<T> prefix;
+
+		/**
+		 * Create an empty node.
+		 */
+		Node() {
+		}
+
+		/**
+		 * Create a deep copy of the node.
+		 * 
+		 * @param other
+		 *            The node to copy
+		 */
+		@SuppressWarnings("unchecked")
+		Node(final Node<T> other) {
+			this.labels = other.labels.clone();
+			if (other.children != null) {
+				this.children = (Node<T>[]) new Node<?>[other.children.length];
+				for (int i = 0; i < other.labels.length; ++i) {
+					this.children[i] = new Node<T>(other.children[i]);
+				}
+			}
+			if (other.exact != null) {
+				this.exact = new ArrayList<T>(other.exact);
+			}
+			if (other.prefix != null) {
+				this.prefix = new ArrayList<T>(other.prefix);
+			}
+		}
+
+		/**
+		 * Get the child for the character.
+		 * 
+		 * @param chr
+		 *            The character leading to the child
+		 * @return The child, or null if there is none
+		 */
+		Node<T> child(final char chr) {
+			final int pos = Arrays.binarySearch(this.labels, chr);
+			if (pos < 0) {
+				return null;
+			}
+			return this.children[pos];
+		}
+
+		/**
+		 * Get the child for the character, adding it if there is none.
+		 * 
+		 * @param chr
+		 *            The character leading to the child
+		 * @return The child
+		 */
+		@SuppressWarnings("unchecked")
+		Node<T> add(final char chr) {
+			int pos = Arrays.binarySearch(this.labels, chr);
+			if (pos >= 0) {
+				return this.children[pos];
+			}
+			pos = -pos - 1;
+			final int len = this.labels.length;
+			final char[] labels = new char[len + 1];
+			final Node<T>[] children = (Node<T>[]) new Node<?>[len + 1];
+			System.arraycopy(this.labels, 0, labels, 0, pos);
+			System.arraycopy(this.labels, pos, labels, pos + 1, len - pos);
+			if (len > 0) {
+				System.arraycopy(this.children, 0, children, 0, pos);
+				System.arraycopy(this.children, pos, children, pos + 1, len
+						- pos);
+			}
+			labels[pos] = chr;
+			children[pos] = new Node<T>();
+			this.labels = labels;
+			this.children = children;
+			return children[pos];
+		}
+
+		/**
+		 * Does the node hold no handlers and lead to no other node?
+		 * 
+		 * @return Yes or no
+		 */
+		boolean isEmpty() {
+			return this.labels.length == 0
+					&& (this.exact == null || this.exact.isEmpty())
+					&& (this.prefix == null || this.prefix.isEmpty());
+		}
+
+		/**
+		 * Remove the child for the character, if there is one.
+		 * 
+		 * @param chr
+		 *            The character leading to the child
+		 */
+		@SuppressWarnings("unchecked")
+		void remove(final char chr) {
+			final int pos = Arrays.binarySearch(this.labels, chr);
+			if (pos < 0) {
+				return;
+			}
+			final int len = this.labels.length - 1;
+			if (len == 0) {
+				this.labels = Node.NO_LABELS;
+				this.children = null;
+				return;
+			}
+			final char[] labels = new char[len];
+			final Node<T>[] children = (Node<T>[]) new Node<?>[len];
+			System.arraycopy(this.labels, 0, labels, 0, pos);
+			System.arraycopy(this.labels, pos + 1, labels, pos, len - pos);
+			System.arraycopy(this.children, 0, children, 0, pos);
+			System.arraycopy(this.children, pos + 1, children, pos, len - pos);
+			this.labels = labels;
+			this.children = children;
+		}
+
+	}
+
+	/**
+	 * The node of the empty text.
+	 */
+	private final Node<T> root;
+
+	/**
+	 * The number of pattern and handler pairs.
+	 */
+	private int size;
+
+	/**
+	 * Create an empty set.
+	 */
+	public URNPatternSet() {
+		this.root = new Node<T>();
+	}
+
+	/**
+	 * Create a copy of the set, which can be modified independently.
+	 * 
+	 * @param other
+	 *            The set to copy
+	 */
+	public URNPatternSet(final URNPatternSet<T> other) {
+		this.root = new Node<T>(other.root);
+		this.size = other.size;
+	}
+
+	/**
+	 * Add a handler for the pattern. A pattern may have several handlers.
+	 * 
+	 * @param pattern
+	 *            The pattern
+	 * @param handler
+	 *            The handler of URNs matching the pattern
+	 */
+	public void add(final URNPattern pattern, final T handler) {
+		final String body = pattern.body();
+		Node<T> node = this.root;
+		for (int i = 0; i < body.length(); ++i) {
+			node = node.add(body.charAt(i));
+		}
+		if (pattern.isWildcard()) {
+			if (node.prefix == null) {
+				node.prefix = new ArrayList<T>(1);
+			}
+			node.prefix.add(handler);
+		} else {
+			if (node.exact == null) {
+				node.exact = new ArrayList<T>(1);
+			}
+			node.exact.add(handler);
+		}
+		++this.size;
+	}
+
+	/**
+	 * Find the handler of the most specific pattern matching the URN: the
+	 * exact pattern if there is one, the wildcard pattern with the longest
+	 * body otherwise. Of several handlers of that pattern, the first added is
+	 * returned.
+	 * 
+	 * @param urn
+	 *            The URN to match
+	 * @return The handler, or null if no pattern matches
+	 */
+	public T best(final ANES_URN urn) {
+		final String text = urn.toString();
+		T best = null;
+		Node<T> node = this.root;
+		for (int i = 0; node != null; ++i) {
+			if (node.prefix != null && !node.prefix.isEmpty()) {
+				best = node.prefix.get(0);
+			}
+			if (i == text.length()) {
+				if (node.exact != null && !node.exact.isEmpty()) {
+					best = node.exact.get(0);
+				}
+				break;
+			}
+			node = node.child(text.charAt(i));
+		}
+		return best;
+	}
+
+	/**
+	 * Is the set empty?
+	 * 
+	 * @return Yes or no
+	 */
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	/**
+	 * Find the handlers of all patterns matching the URN.
+	 * 
+	 * @param urn
+	 *            The URN to match
+	 * @return The handlers, from the least to the most specific pattern
+	 */
+	public List<T> match(final ANES_URN urn) {
+		final List<T> handlers = new ArrayList<T>();
+		this.match(urn, handlers);
+		return handlers;
+	}
+
+	/**
+	 * Add the handlers of all patterns matching the URN to the collection,
+	 * from the least to the most specific pattern.
+	 * 
+	 * @param urn
+	 *            The URN to match
+	 * @param handlers
+	 *            The collection to add the handlers to
+	 */
+	public void match(final ANES_URN urn,
+			final Collection<? super T> handlers) {
+		final String text = urn.toString();
+		Node<T> node = this.root;
+		for (int i = 0; node != null; ++i) {
+			if (node.prefix != null) {
+				handlers.addAll(node.prefix);
+			}
+			if (i == text.length()) {
+				if (node.exact != null) {
+					handlers.addAll(node.exact);
+				}
+				break;
+			}
+			node = node.child(text.charAt(i));
+		}
+	}
+
+	/**
+	 * Remove a handler of the pattern.
+	 * 
+	 * @param pattern
+	 *            The pattern
+	 * @param handler
+	 *            The handler to remove
+	 * @return Whether the handler was in the set for this pattern
+	 */
+	public boolean remove(final URNPattern pattern, final T handler) {
+		final String body = pattern.body();
+		final List<Node<T>> path = new ArrayList<Node<T>>(body.length() + 1);
+		Node<T> node = this.root;
+		for (int i = 0; node != null && i < body.length(); ++i) {
+			path.add(node);
+			node = node.child(body.charAt(i));
+		}
+		if (node == null) {
+			return false;
+		}
+		final List<T> handlers;
+		if (pattern.isWildcard()) {
+			handlers = node.prefix;
+		} else {
+			handlers = node.exact;
+		}
+		if (handlers == null || !handlers.remove(handler)) {
+			return false;
+		}
+		--this.size;
+		// Prune the nodes that no longer lead to any handler
+		for (int i = body.length() - 1; i >= 0 && node.isEmpty(); --i) {
+			node = path.get(i);
+			node.remove(body.charAt(i));
+		}
+		return true;
+	}
+
+	/**
+	 * Get the number of pattern and handler pairs in the set.
+	 * 
+	 * @return The size
+	 */
+	public int size() {
+		return this.size;
+	}
+
+}
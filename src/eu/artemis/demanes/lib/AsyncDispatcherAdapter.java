@@ -0,0 +1,110 @@
+/**
+ * File AsyncDispatcherAdapter.java
+ * 
+ * This file is part of the eu.artemis.demanes project.
+ *
+ * Copyright 2014 TNO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.artemis.demanes.lib;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * <h1>AsyncDispatcherAdapter</h1>
+ * 
+ * <p>
+ * An {@link AsyncMessageDispatcher} on top of a synchronous
+ * {@link MessageDispatcher}, which it runs on an {@link Executor}, so that the
+ * thread handing over a message is not held up by it.
+ * </p>
+ *
+ * @author DEMANES
+ * @version 0.1
+ * @since 18 okt. 2026
+ *
+ */
+public class AsyncDispatcherAdapter implements AsyncMessageDispatcher {
+
+	/**
+	 * Get the dispatcher as an asynchronous one, adapting it only if it is
+	 * not one already.
+	 * 
+	 * @param dispatcher
+	 *            the dispatcher
+	 * @param executor
+	 *            the executor to run a synchronous dispatcher on
+	 * @return the dispatcher itself, or an adapter of it
+	 */
+	public static AsyncMessageDispatcher adapt(MessageDispatcher dispatcher,
+			Executor executor) {
+		if (dispatcher instanceof AsyncMessageDispatcher) {
+			return (AsyncMessageDispatcher) dispatcher;
+		}
+		return new AsyncDispatcherAdapter(dispatcher, executor);
+	}
+
+	private final MessageDispatcher dispatcher;
+
+	private final Executor executor;
+
+	/**
+	 * @param dispatcher
+	 *            the synchronous dispatcher
+	 * @param executor
+	 *            the executor to run it on
+	 */
+	public AsyncDispatcherAdapter(MessageDispatcher dispatcher,
+			Executor executor) {
+		if (dispatcher == null || executor == null) {
+			throw new IllegalArgumentException(
+					"A dispatcher and an executor are required");
+		}
+		this.dispatcher = dispatcher;
+		this.executor = executor;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public CompletionStage<ByteBuffer> dispatchAsync(final ByteBuffer msg) {
+		return CompletableFuture.supplyAsync(new Supplier<ByteBuffer>() {
+
+			@Override
+			public ByteBuffer get() {
+				return AsyncDispatcherAdapter.this.dispatcher
+						.dispatchMessage(msg);
+			}
+
+		}, this.executor);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * <p>
+	 * The message is dispatched in the calling thread.
+	 * </p>
+	 */
+	@Override
+	public ByteBuffer dispatchMessage(ByteBuffer msg) {
+		return this.dispatcher.dispatchMessage(msg);
+	}
+
+}
@@ -0,0 +1,61 @@
+/**
+ * File AsyncMessageDispatcher.java
+ * 
+ * This file is part of the eu.artemis.demanes project.
+ *
+ * Copyright 2014 TNO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.artemis.demanes.lib;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * <h1>AsyncMessageDispatcher</h1>
+ * 
+ * <p>
+ * A {@link MessageDispatcher} which can process a message without holding up
+ * the thread that hands it over, for instance while it reads a slow sensor or
+ * invokes an action. Registries and connectors which know about asynchronous
+ * dispatchers call {@link #dispatchAsync(ByteBuffer)}, and send the response
+ * when it is there. Others call {@link #dispatchMessage(ByteBuffer)}, which
+ * may block until the response is there.
+ * </p>
+ * 
+ * <p>
+ * The message handed to {@link #dispatchAsync(ByteBuffer)} remains valid
+ * until the returned stage completes.
+ * </p>
+ *
+ * @author DEMANES
+ * @version 0.1
+ * @since 18 okt. 2026
+ *
+ * @see AsyncDispatcherAdapter
+ */
+public interface AsyncMessageDispatcher extends MessageDispatcher {
+
+	/**
+	 * Dispatch the message asynchronously.
+	 * 
+	 * @param msg
+	 *            the received message packed in a buffer of bytes.
+	 * @return a stage which completes with the response to this message
+	 *         packed in a buffer of bytes, or with null if no response is to
+	 *         be sent.
+	 */
+	public CompletionStage<ByteBuffer> dispatchAsync(ByteBuffer msg);
+
+}
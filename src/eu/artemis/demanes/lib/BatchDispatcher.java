@@ -0,0 +1,132 @@
+/**
+ * File BatchDispatcher.java
+ * 
+ * This file is part of the eu.artemis.demanes project.
+ *
+ * Copyright 2014 TNO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.artemis.demanes.lib;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <h1>BatchDispatcher</h1>
+ * 
+ * <p>
+ * A {@link MessageDispatcher} which receives {@linkplain Batches batches} of
+ * messages, as sent by a {@link BatchingConnector}, and dispatches every
+ * message in them to the dispatcher it wraps. The responses to the messages
+ * of one batch are returned as a batch again, with an entry for every message
+ * in the order of the messages, so that the n-th response answers the n-th
+ * message. A message without a response has an empty entry. A batch without
+ * any response is not answered.
+ * </p>
+ * 
+ * <p>
+ * Responses leased from the {@link BufferPool} given to the dispatcher are
+ * released once they are copied into the batch.
+ * </p>
+ *
+ * @author DEMANES
+ * @version 0.1
+ * @since 18 okt. 2026
+ *
+ */
+public class BatchDispatcher implements MessageDispatcher {
+
+	private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+	private final MessageDispatcher dispatcher;
+
+	private final BufferPool pool;
+
+	/**
+	 * @param dispatcher
+	 *            the dispatcher of the messages in the batches
+	 */
+	public BatchDispatcher(MessageDispatcher dispatcher) {
+		this(dispatcher, null);
+	}
+
+	/**
+	 * @param dispatcher
+	 *            the dispatcher of the messages in the batches
+	 * @param pool
+	 *            the pool the dispatcher leases its responses from, or null
+	 */
+	public BatchDispatcher(MessageDispatcher dispatcher, BufferPool pool) {
+		if (dispatcher == null) {
+			throw new IllegalArgumentException("Dispatcher must be non-null");
+		}
+		this.dispatcher = dispatcher;
+		this.pool = pool;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the message is not a valid batch
+	 */
+	@Override
+	public ByteBuffer dispatchMessage(ByteBuffer msg) {
+		final List<ByteBuffer> messages = Batches.split(msg);
+		final List<ByteBuffer> responses = new ArrayList<ByteBuffer>(
+				messages.size());
+		boolean answered = false;
+		int size = 0;
+		try {
+			for (ByteBuffer message : messages) {
+				final ByteBuffer response = this.dispatcher
+						.dispatchMessage(message);
+				if (response == null) {
+					responses.add(null);
+					size += Batches.size(0);
+				} else {
+					responses.add(response);
+					size += Batches.size(response.remaining());
+					answered = true;
+				}
+			}
+			if (!answered) {
+				return null;
+			}
+			final ByteBuffer batch = ByteBuffer.allocate(size);
+			for (ByteBuffer response : responses) {
+				Batches.append(batch, response == null ? BatchDispatcher.EMPTY
+						: response);
+			}
+			batch.flip();
+			return batch;
+		} finally {
+			// Also when a dispatch failed halfway through the batch
+			this.release(responses);
+		}
+	}
+
+	private void release(List<ByteBuffer> responses) {
+		if (this.pool == null) {
+			return;
+		}
+		for (ByteBuffer response : responses) {
+			if (response != null) {
+				this.pool.release(response);
+			}
+		}
+	}
+
+}
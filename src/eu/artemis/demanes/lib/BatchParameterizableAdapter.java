@@ -0,0 +1,170 @@
+/**
+ * File BatchParameterizableAdapter.java
+ * 
+ * This file is part of the eu.artemis.demanes project.
+ *
+ * Copyright 2014 TNO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.artemis.demanes.lib;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import eu.artemis.demanes.datatypes.ANES_URN;
+import eu.artemis.demanes.exceptions.ParameterizationException;
+import eu.artemis.demanes.parameterization.BatchParameterizable;
+import eu.artemis.demanes.parameterization.Parameterizable;
+
+/**
+ * <h1>BatchParameterizableAdapter</h1>
+ * 
+ * <p>
+ * Default {@link BatchParameterizable} on top of a plain
+ * {@link Parameterizable}, which handles a batch one parameter at a time. To
+ * approximate an atomic batch, {@link #setParameters(Map)} first retrieves
+ * the current values of the parameters, and if one of them can not be set,
+ * restores the ones it already set, in reverse order. Parameters that can be
+ * set but not retrieved are still set, but not restored. Another party
+ * changing the parameters during the batch defeats this.
+ * </p>
+ *
+ * @author DEMANES
+ * @version 0.1
+ * @since 18 okt. 2026
+ *
+ */
+public class BatchParameterizableAdapter implements BatchParameterizable {
+
+	private final Parameterizable parameterizable;
+
+	/**
+	 * Get the parameterizable as a BatchParameterizable, adapting it only if
+	 * it is not one already.
+	 * 
+	 * @param parameterizable
+	 *            the parameterizable
+	 * @return the parameterizable itself, or an adapter of it
+	 */
+	public static BatchParameterizable adapt(Parameterizable parameterizable) {
+		if (parameterizable instanceof BatchParameterizable) {
+			return (BatchParameterizable) parameterizable;
+		}
+		return new BatchParameterizableAdapter(parameterizable);
+	}
+
+	/**
+	 * @param parameterizable
+	 *            the parameterizable to adapt
+	 */
+	public BatchParameterizableAdapter(Parameterizable parameterizable) {
+		if (parameterizable == null) {
+			throw new IllegalArgumentException(
+					"Parameterizable must be non-null");
+		}
+		this.parameterizable = parameterizable;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Object getParameter(ANES_URN urn) throws ParameterizationException {
+		return this.parameterizable.getParameter(urn);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Map<ANES_URN, Object> getParameters(Collection<ANES_URN> urns)
+			throws ParameterizationException {
+		final Map<ANES_URN, Object> values = new LinkedHashMap<ANES_URN, Object>();
+		for (ANES_URN urn : urns) {
+			values.put(urn, this.parameterizable.getParameter(urn));
+		}
+		return values;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Set<ANES_URN> listParameters() throws ParameterizationException {
+		return this.parameterizable.listParameters();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void setParameter(ANES_URN urn, Object value)
+			throws ParameterizationException {
+		this.parameterizable.setParameter(urn, value);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void setParameters(Map<ANES_URN, Object> values)
+			throws ParameterizationException {
+		final Map<ANES_URN, Object> previous = new HashMap<ANES_URN, Object>();
+		for (ANES_URN urn : values.keySet()) {
+			try {
+				previous.put(urn, this.parameterizable.getParameter(urn));
+			} catch (ParameterizationException e) {
+				// A write-only parameter can not be restored
+			} catch (RuntimeException e) {
+				// A write-only parameter can not be restored
+			}
+		}
+		final List<ANES_URN> set = new ArrayList<ANES_URN>(values.size());
+		try {
+			for (Map.Entry<ANES_URN, Object> entry : values.entrySet()) {
+				this.parameterizable.setParameter(entry.getKey(),
+						entry.getValue());
+				set.add(entry.getKey());
+			}
+		} catch (ParameterizationException e) {
+			this.restore(previous, set);
+			throw e;
+		} catch (RuntimeException e) {
+			this.restore(previous, set);
+			throw e;
+		}
+	}
+
+	private void restore(Map<ANES_URN, Object> previous, List<ANES_URN> set) {
+		for (int i = set.size() - 1; i >= 0; i--) {
+			final ANES_URN urn = set.get(i);
+			if (!previous.containsKey(urn)) {
+				continue;
+			}
+			try {
+				this.parameterizable.setParameter(urn, previous.get(urn));
+			} catch (ParameterizationException e) {
+				// Restore the others anyway
+			} catch (RuntimeException e) {
+				// Restore the others anyway
+			}
+		}
+	}
+
+}
@@ -0,0 +1,69 @@
+/**
+ * File BatchParameterizationProxy.java
+ * 
+ * This file is part of the eu.artemis.demanes project.
+ *
+ * Copyright 2014 TNO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.artemis.demanes.lib;
+
+import eu.artemis.demanes.exceptions.ParameterizationException;
+
+/**
+ * A {@link ParameterizationProxy} which retrieves or modifies many parameters
+ * in one call, with a single message each way. As the single calls of the
+ * proxy, the batch calls take and return arrays of bytes, which are encoded
+ * by {@link ParameterBatch}.
+ * 
+ * This is a separate interface rather than new methods of
+ * ParameterizationProxy, so that existing implementations remain valid.
+ * 
+ * @author DEMANES
+ * @version 0.1
+ * @since 18 okt. 2026
+ * 
+ * @see eu.artemis.demanes.parameterization.BatchParameterizable
+ */
+public interface BatchParameterizationProxy extends ParameterizationProxy {
+
+	/**
+	 * Retrieves the values of the parameters identified by the given urns.
+	 * 
+	 * @param urns
+	 *            the identifiers of the parameters, encoded by
+	 *            {@link URNSerializer#serializeAll(java.util.Collection)}.
+	 * @return the byte arrays representing the parameters, keyed by their
+	 *         identifiers and encoded by
+	 *         {@link ParameterBatch#serialize(URNSerializer, java.util.Map)}.
+	 * @throws ParameterizationException
+	 *             if any of the parameters can not be retrieved.
+	 */
+	byte[] getParameters(byte[] urns) throws ParameterizationException;
+
+	/**
+	 * Sets the parameters to the given values. Implementations apply the
+	 * batch atomically where they can: if one of the parameters can not be
+	 * set, none of them is changed.
+	 * 
+	 * @param values
+	 *            the byte arrays representing the new values, keyed by the
+	 *            identifiers of the parameters and encoded by
+	 *            {@link ParameterBatch#serialize(URNSerializer, java.util.Map)}.
+	 * @throws ParameterizationException
+	 *             if any of the parameters can not be set.
+	 */
+	void setParameters(byte[] values) throws ParameterizationException;
+
+}
@@ -0,0 +1,184 @@
+/**
+ * File BatchProxyAdapter.java
+ * 
+ * This file is part of the eu.artemis.demanes project.
+ *
+ * Copyright 2014 TNO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.artemis.demanes.lib;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import eu.artemis.demanes.datatypes.ANES_URN;
+import eu.artemis.demanes.exceptions.ParameterizationAccessorException;
+import eu.artemis.demanes.exceptions.ParameterizationException;
+import eu.artemis.demanes.lib.exceptions.SerializationException;
+
+/**
+ * <h1>BatchProxyAdapter</h1>
+ * 
+ * <p>
+ * Default {@link BatchParameterizationProxy} on top of a plain
+ * {@link ParameterizationProxy}, which handles a batch one parameter at a
+ * time. Meant for the side of a connection where the proxy is local, so that
+ * a batch still travels in a single message. A failing batch set is undone
+ * as by the {@link BatchParameterizableAdapter}, leaving out the parameters
+ * that can not be retrieved.
+ * </p>
+ *
+ * @author DEMANES
+ * @version 0.1
+ * @since 18 okt. 2026
+ *
+ */
+public class BatchProxyAdapter implements BatchParameterizationProxy {
+
+	private final ParameterizationProxy proxy;
+
+	private final URNSerializer urns;
+
+	/**
+	 * Get the proxy as a BatchParameterizationProxy, adapting it only if it
+	 * is not one already.
+	 * 
+	 * @param proxy
+	 *            the proxy
+	 * @param urns
+	 *            the serializer of the URNs in the batches
+	 * @return the proxy itself, or an adapter of it
+	 */
+	public static BatchParameterizationProxy adapt(
+			ParameterizationProxy proxy, URNSerializer urns) {
+		if (proxy instanceof BatchParameterizationProxy) {
+			return (BatchParameterizationProxy) proxy;
+		}
+		return new BatchProxyAdapter(proxy, urns);
+	}
+
+	/**
+	 * @param proxy
+	 *            the proxy to adapt
+	 * @param urns
+	 *            the serializer of the URNs in the batches
+	 */
+	public BatchProxyAdapter(ParameterizationProxy proxy, URNSerializer urns) {
+		if (proxy == null || urns == null) {
+			throw new IllegalArgumentException(
+					"Proxy and serializer must be non-null");
+		}
+		this.proxy = proxy;
+		this.urns = urns;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public byte[] getParameter(ANES_URN urn) throws ParameterizationException {
+		return this.proxy.getParameter(urn);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public byte[] getParameters(byte[] urns) throws ParameterizationException {
+		try {
+			final Map<ANES_URN, byte[]> values = new LinkedHashMap<ANES_URN, byte[]>();
+			for (ANES_URN urn : this.urns.deserializeAll(urns)) {
+				values.put(urn, this.proxy.getParameter(urn));
+			}
+			return ParameterBatch.serialize(this.urns, values);
+		} catch (SerializationException e) {
+			throw new ParameterizationAccessorException(
+					"Invalid parameter batch", e);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public byte[] listParameters() throws ParameterizationException {
+		return this.proxy.listParameters();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void setParameter(ANES_URN urn, byte[] value)
+			throws ParameterizationException {
+		this.proxy.setParameter(urn, value);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void setParameters(byte[] values) throws ParameterizationException {
+		final Map<ANES_URN, byte[]> batch;
+		try {
+			batch = ParameterBatch.deserialize(this.urns, values);
+		} catch (SerializationException e) {
+			throw new ParameterizationAccessorException(
+					"Invalid parameter batch", e);
+		}
+		final Map<ANES_URN, byte[]> previous = new HashMap<ANES_URN, byte[]>();
+		for (ANES_URN urn : batch.keySet()) {
+			try {
+				previous.put(urn, this.proxy.getParameter(urn));
+			} catch (ParameterizationException e) {
+				// A write-only parameter can not be restored
+			} catch (RuntimeException e) {
+				// A write-only parameter can not be restored
+			}
+		}
+		final List<ANES_URN> set = new ArrayList<ANES_URN>(batch.size());
+		try {
+			for (Map.Entry<ANES_URN, byte[]> entry : batch.entrySet()) {
+				this.proxy.setParameter(entry.getKey(), entry.getValue());
+				set.add(entry.getKey());
+			}
+		} catch (ParameterizationException e) {
+			this.restore(previous, set);
+			throw e;
+		} catch (RuntimeException e) {
+			this.restore(previous, set);
+			throw e;
+		}
+	}
+
+	private void restore(Map<ANES_URN, byte[]> previous, List<ANES_URN> set) {
+		for (int i = set.size() - 1; i >= 0; i--) {
+			final ANES_URN urn = set.get(i);
+			if (!previous.containsKey(urn)) {
+				continue;
+			}
+			try {
+				this.proxy.setParameter(urn, previous.get(urn));
+			} catch (ParameterizationException e) {
+				// Restore the others anyway
+			} catch (RuntimeException e) {
+				// Restore the others anyway
+			}
+		}
+	}
+
+}
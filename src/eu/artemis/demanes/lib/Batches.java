@@ -0,0 +1,105 @@
+/**
+ * File Batches.java
+ * 
+ * This file is part of the eu.artemis.demanes project.
+ *
+ * Copyright 2014 TNO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.artemis.demanes.lib;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <h1>Batches</h1>
+ * 
+ * <p>
+ * Encoding of a batch of messages in a single message, so that several small
+ * messages cost a single frame and a single write on the connection. Every
+ * message in the batch is a {@link Varint} length followed by its bytes.
+ * </p>
+ *
+ * @author DEMANES
+ * @version 0.1
+ * @since 18 okt. 2026
+ *
+ * @see BatchingConnector
+ * @see BatchDispatcher
+ */
+public final class Batches {
+
+	private Batches() {
+	}
+
+	/**
+	 * Append a message to a batch at the current position of the buffer. The
+	 * position of the message is moved past its bytes.
+	 * 
+	 * @param batch
+	 *            the buffer of the batch, with at least {@link #size(int)}
+	 *            bytes remaining
+	 * @param message
+	 *            the message to append
+	 */
+	public static void append(ByteBuffer batch, ByteBuffer message) {
+		Varint.write(batch, message.remaining());
+		batch.put(message);
+	}
+
+	/**
+	 * Get the number of bytes a message takes in a batch.
+	 * 
+	 * @param length
+	 *            the length of the message
+	 * @return the size of the message in the batch
+	 */
+	public static int size(int length) {
+		return Varint.size(length) + length;
+	}
+
+	/**
+	 * Split a batch into its messages, from the current position to the limit
+	 * of the buffer. The messages share their content with the batch.
+	 * 
+	 * @param batch
+	 *            the buffer of the batch, whose position is moved to its limit
+	 * @return the messages in the batch
+	 * @throws IllegalArgumentException
+	 *             if the buffer does not hold a valid batch
+	 */
+	public static List<ByteBuffer> split(ByteBuffer batch) {
+		final List<ByteBuffer> messages = new ArrayList<ByteBuffer>();
+		while (batch.hasRemaining()) {
+			final int length;
+			try {
+				length = Varint.read(batch);
+			} catch (RuntimeException e) {
+				throw new IllegalArgumentException("Invalid message length", e);
+			}
+			if (length > batch.remaining()) {
+				throw new IllegalArgumentException("Message of " + length
+						+ " bytes exceeds the " + batch.remaining()
+						+ " bytes remaining in the batch");
+			}
+			final ByteBuffer message = batch.slice();
+			message.limit(length);
+			messages.add(message);
+			batch.position(batch.position() + length);
+		}
+		return messages;
+	}
+
+}
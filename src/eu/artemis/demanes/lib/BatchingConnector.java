@@ -0,0 +1,179 @@
+/**
+ * File BatchingConnector.java
+ * 
+ * This file is part of the eu.artemis.demanes project.
+ *
+ * Copyright 2014 TNO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.artemis.demanes.lib;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h1>BatchingConnector</h1>
+ * 
+ * <p>
+ * A {@link GatheringSocketConnector} which coalesces the messages written to it
+ * into {@linkplain Batches batches}, and writes every batch as a single message
+ * to the connector it wraps. The receiving end splits them again with a
+ * {@link BatchDispatcher}.
+ * </p>
+ * 
+ * <p>
+ * Like Nagle's algorithm, a message is held back for at most the latency
+ * budget of the connector, waiting for more messages to send along with it.
+ * A batch is written as soon as it is full or its first message has waited
+ * for the latency budget, or when it is {@linkplain #flush() flushed}. A
+ * message that does not fit in a batch on its own is sent alone, without
+ * copying it. With a latency budget of zero every message is sent right away.
+ * </p>
+ *
+ * @author DEMANES
+ * @version 0.1
+ * @since 18 okt. 2026
+ *
+ */
+public class BatchingConnector implements GatheringSocketConnector {
+
+	private final ByteBuffer batch;
+
+	private int generation;
+
+	private final long latencyBudget;
+
+	private final MessageDispatcherRegistry registry;
+
+	private final GatheringSocketConnector target;
+
+	private final ScheduledExecutorService timer;
+
+	/**
+	 * @param target
+	 *            the connector to write the batches to, which is also the
+	 *            registry of the dispatchers of the responses
+	 * @param maxBatchSize
+	 *            the number of bytes of a full batch
+	 * @param latencyBudget
+	 *            the longest time a message is held back
+	 * @param unit
+	 *            the unit of the latency budget
+	 * @param timer
+	 *            the executor which writes batches whose time is up
+	 */
+	public <C extends GatheringSocketConnector & MessageDispatcherRegistry> BatchingConnector(
+			C target, int maxBatchSize, long latencyBudget, TimeUnit unit,
+			ScheduledExecutorService timer) {
+		if (target == null || timer == null) {
+			throw new IllegalArgumentException(
+					"A target connector and a timer are required");
+		}
+		if (maxBatchSize <= 0 || latencyBudget < 0) {
+			throw new IllegalArgumentException("Invalid batch size "
+					+ maxBatchSize + " or latency budget " + latencyBudget);
+		}
+		this.target = target;
+		this.registry = target;
+		this.batch = ByteBuffer.allocateDirect(maxBatchSize);
+		this.latencyBudget = unit.toNanos(latencyBudget);
+		this.timer = timer;
+	}
+
+	/**
+	 * Write the messages held back right away.
+	 */
+	public synchronized void flush() {
+		if (this.batch.position() == 0) {
+			return;
+		}
+		this.generation++;
+		this.batch.flip();
+		try {
+			this.target.write(this.batch);
+		} finally {
+			this.batch.clear();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public MessageDispatcherRegistry write(byte[] val) {
+		return this.write(ByteBuffer.wrap(val));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * <p>
+	 * The message is copied into the current batch, unless it is too large
+	 * for a batch.
+	 * </p>
+	 */
+	@Override
+	public synchronized MessageDispatcherRegistry write(ByteBuffer... vals) {
+		long length = 0;
+		for (ByteBuffer val : vals) {
+			length += val.remaining();
+		}
+		if (length > Integer.MAX_VALUE - Varint.MAX_SIZE) {
+			throw new IllegalArgumentException("Message of " + length
+					+ " bytes is too large");
+		}
+		final int size = Batches.size((int) length);
+		if (size > this.batch.remaining()) {
+			this.flush();
+		}
+		if (size > this.batch.capacity()) {
+			final ByteBuffer[] parts = new ByteBuffer[vals.length + 1];
+			parts[0] = ByteBuffer.allocate(Varint.size((int) length));
+			Varint.write(parts[0], (int) length);
+			parts[0].flip();
+			System.arraycopy(vals, 0, parts, 1, vals.length);
+			this.target.write(parts);
+			return this.registry;
+		}
+		final boolean first = this.batch.position() == 0;
+		Varint.write(this.batch, (int) length);
+		for (ByteBuffer val : vals) {
+			this.batch.put(val);
+		}
+		if (this.latencyBudget == 0 || !this.batch.hasRemaining()) {
+			this.flush();
+		} else if (first) {
+			this.schedule();
+		}
+		return this.registry;
+	}
+
+	private void schedule() {
+		final int generation = this.generation;
+		this.timer.schedule(new Runnable() {
+
+			@Override
+			public void run() {
+				synchronized (BatchingConnector.this) {
+					if (BatchingConnector.this.generation == generation) {
+						BatchingConnector.this.flush();
+					}
+				}
+			}
+
+		}, this.latencyBudget, TimeUnit.NANOSECONDS);
+	}
+
+}
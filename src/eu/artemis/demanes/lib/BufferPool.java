@@ -0,0 +1,492 @@
+/**
+ * File BufferPool.java
+ * 
+ * This file is part of the eu.artemis.demanes project.
+ *
+ * Copyright 2014 TNO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.artemis.demanes.lib;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <h1>BufferPool</h1>
+ * 
+ * <p>
+ * Pool of direct {@link ByteBuffer}s, for instance for the responses of
+ * {@link MessageDispatcher}s and
+ * {@link eu.artemis.demanes.lib.services.RESTService}s, so that every message
+ * does not cost a new buffer.
+ * </p>
+ * 
+ * <p>
+ * Buffers come in size classes, powers of two between the minimum and the
+ * maximum size of the pool. The buffers of a class are carved from slabs of
+ * direct memory. Released buffers are kept in a small cache of the releasing
+ * thread first, and in a queue shared by all threads when that is full, and
+ * leased from the cache of the leasing thread first. Virtual threads, which
+ * run a single task and are gone with their cache, have no cache and use the
+ * shared queues only. A request larger than the maximum size gets a buffer of
+ * its own, which is not pooled.
+ * </p>
+ * 
+ * <p>
+ * A leased buffer must be {@linkplain #release(ByteBuffer) released} exactly
+ * once, when no one uses it anymore. The pool keeps track of the buffers it
+ * leased, and only takes those back: a buffer released twice, a view of a
+ * leased buffer or a buffer of someone else is not taken. Leased buffers are
+ * only referred to weakly, so a buffer that is never released is simply
+ * collected, after which the pool carves a new buffer at its place in the
+ * slab; such buffers are counted as {@linkplain #leaked() leaked}. The pool is
+ * thread-safe, and a buffer may be released by another thread than the one
+ * that leased it.
+ * </p>
+ *
+ * @author DEMANES
+ * @version 0.1
+ * @since 18 okt. 2026
+ *
+ */
+public class BufferPool {
+
+	private final class Cache {
+
+		private final int[] count;
+
+		private final Slot[][] free;
+
+		Cache(int classes) {
+			this.count = new int[classes];
+			this.free = new Slot[classes][CACHE_SIZE];
+		}
+
+	}
+
+	/**
+	 * A leased buffer, referred to weakly, keyed by the identity of the
+	 * buffer.
+	 */
+	private static final class Lease extends WeakReference<ByteBuffer> {
+
+		private final int hash;
+
+		private final Slot slot;
+
+		Lease(ByteBuffer buf, Slot slot, ReferenceQueue<ByteBuffer> queue) {
+			super(buf, queue);
+			this.hash = System.identityHashCode(buf);
+			this.slot = slot;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj == this || obj instanceof Probe
+					&& ((Probe) obj).buf == this.get();
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hash;
+		}
+
+	}
+
+	/**
+	 * Key to look up the lease of a buffer.
+	 */
+	private static final class Probe {
+
+		private final ByteBuffer buf;
+
+		Probe(ByteBuffer buf) {
+			this.buf = buf;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Lease && ((Lease) obj).get() == this.buf;
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(this.buf);
+		}
+
+	}
+
+	/**
+	 * The place of a buffer in its slab, which holds the buffer while it is
+	 * not leased.
+	 */
+	private static final class Slot {
+
+		private ByteBuffer buf;
+
+		private final int cls;
+
+		private final int offset;
+
+		private final ByteBuffer slab;
+
+		Slot(ByteBuffer slab, int offset, int cls) {
+			this.slab = slab;
+			this.offset = offset;
+			this.cls = cls;
+		}
+
+	}
+
+	/**
+	 * Default size of the smallest buffers in a pool.
+	 */
+	public static final int DEFAULT_MIN_SIZE = 512;
+
+	/**
+	 * Default size of the largest buffers in a pool.
+	 */
+	public static final int DEFAULT_MAX_SIZE = 64 * 1024;
+
+	private static final int CACHE_SIZE = 16;
+
+	private static final int SLAB_SIZE = 256 * 1024;
+
+	private static final Method IS_VIRTUAL = BufferPool.lookupIsVirtual();
+
+	private static boolean isVirtual(Thread thread) {
+		if (IS_VIRTUAL == null) {
+			return false;
+		}
+		try {
+			return ((Boolean) IS_VIRTUAL.invoke(thread)).booleanValue();
+		} catch (IllegalAccessException e) {
+			return false;
+		} catch (InvocationTargetException e) {
+			return false;
+		}
+	}
+
+	private static Method lookupIsVirtual() {
+		try {
+			return Thread.class.getMethod("isVirtual");
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+
+	private final AtomicLong allocated = new AtomicLong();
+
+	/**
+	 * The cache of every thread, or null for a virtual thread, which is
+	 * found out once per thread.
+	 */
+	private final ThreadLocal<Cache> caches = new ThreadLocal<Cache>() {
+
+		@Override
+		protected Cache initialValue() {
+			if (BufferPool.isVirtual(Thread.currentThread())) {
+				return null;
+			}
+			return new Cache(BufferPool.this.classes);
+		}
+
+	};
+
+	private final int classes;
+
+	private final ReferenceQueue<ByteBuffer> collected = new ReferenceQueue<ByteBuffer>();
+
+	private final Queue<Slot>[] fresh;
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong leaked = new AtomicLong();
+
+	private final ConcurrentMap<Lease, Lease> leased = new ConcurrentHashMap<Lease, Lease>();
+
+	private final AtomicLong leases = new AtomicLong();
+
+	private final int minShift;
+
+	private final AtomicLong releases = new AtomicLong();
+
+	private final Queue<Slot>[] shared;
+
+	private final AtomicLong unpooled = new AtomicLong();
+
+	/**
+	 * Create a pool of buffers from {@link #DEFAULT_MIN_SIZE} to
+	 * {@link #DEFAULT_MAX_SIZE} bytes.
+	 */
+	public BufferPool() {
+		this(DEFAULT_MIN_SIZE, DEFAULT_MAX_SIZE);
+	}
+
+	/**
+	 * Create a pool of buffers of the given sizes. Both sizes are rounded up
+	 * to a power of two.
+	 * 
+	 * @param minSize
+	 *            the size of the smallest buffers
+	 * @param maxSize
+	 *            the size of the largest buffers
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	public BufferPool(int minSize, int maxSize) {
+		if (minSize <= 0 || maxSize < minSize || maxSize > 1 << 30) {
+			throw new IllegalArgumentException("Invalid buffer sizes "
+					+ minSize + " to " + maxSize);
+		}
+		this.minShift = 32 - Integer.numberOfLeadingZeros(minSize - 1);
+		this.classes = 32 - Integer.numberOfLeadingZeros(maxSize - 1)
+				- this.minShift + 1;
+		this.fresh = new Queue[this.classes];
+		this.shared = new Queue[this.classes];
+		for (int i = 0; i < this.classes; i++) {
+			this.fresh[i] = new ConcurrentLinkedQueue<Slot>();
+			this.shared[i] = new ConcurrentLinkedQueue<Slot>();
+		}
+	}
+
+	/**
+	 * Get the number of bytes of direct memory allocated by the pool, in slabs
+	 * and in buffers that are not pooled.
+	 * 
+	 * @return the number of bytes allocated
+	 */
+	public long allocatedBytes() {
+		return this.allocated.get();
+	}
+
+	/**
+	 * Get the fraction of leases served with a buffer that was released
+	 * before.
+	 * 
+	 * @return the hit rate, between 0 and 1
+	 */
+	public double hitRate() {
+		final long leases = this.leases.get();
+		return leases == 0 ? 0.0 : (double) this.hits.get() / leases;
+	}
+
+	/**
+	 * Check whether a buffer is leased from this pool and not yet released.
+	 * Views of a leased buffer are not leased themselves.
+	 * 
+	 * @param buf
+	 *            the buffer to check
+	 * @return true if the buffer is leased from this pool
+	 */
+	public boolean isLeased(ByteBuffer buf) {
+		if (buf == null || !buf.isDirect() || buf.isReadOnly()) {
+			return false;
+		}
+		return this.leased.containsKey(new Probe(buf));
+	}
+
+	/**
+	 * Get the number of leased buffers that were collected without being
+	 * released. A growing number points at a dispatcher that does not
+	 * release what it leases.
+	 * 
+	 * @return the number of leaked buffers
+	 */
+	public long leaked() {
+		return this.leaked.get();
+	}
+
+	/**
+	 * Lease a buffer of at least the given size. The buffer has position zero
+	 * and the requested size as limit, and big-endian byte order. Its content
+	 * is undefined.
+	 * 
+	 * @param size
+	 *            the number of bytes needed
+	 * @return a direct buffer
+	 */
+	public ByteBuffer lease(int size) {
+		if (size < 0) {
+			throw new IllegalArgumentException("Negative buffer size " + size);
+		}
+		this.leases.incrementAndGet();
+		final int cls = this.classOf(size);
+		if (cls == this.classes) {
+			this.unpooled.incrementAndGet();
+			this.allocated.addAndGet(size);
+			return ByteBuffer.allocateDirect(size);
+		}
+		this.reclaim();
+		final Cache cache = this.caches.get();
+		Slot slot;
+		if (cache != null && cache.count[cls] > 0) {
+			final int i = --cache.count[cls];
+			slot = cache.free[cls][i];
+			cache.free[cls][i] = null;
+			this.hits.incrementAndGet();
+		} else {
+			slot = this.shared[cls].poll();
+			if (slot != null) {
+				this.hits.incrementAndGet();
+			} else {
+				slot = this.fresh[cls].poll();
+				if (slot == null) {
+					slot = this.carve(cls);
+				}
+			}
+		}
+		final ByteBuffer buf = slot.buf;
+		slot.buf = null;
+		final Lease lease = new Lease(buf, slot, this.collected);
+		this.leased.put(lease, lease);
+		buf.limit(size);
+		return buf;
+	}
+
+	/**
+	 * Get the number of leases served.
+	 * 
+	 * @return the number of leases
+	 */
+	public long leases() {
+		return this.leases.get();
+	}
+
+	/**
+	 * Get the number of pooled buffers leased and neither released nor
+	 * leaked.
+	 * 
+	 * @return the number of outstanding leases
+	 */
+	public long outstanding() {
+		return this.leases.get() - this.unpooled.get() - this.releases.get()
+				- this.leaked.get();
+	}
+
+	/**
+	 * Return a leased buffer to the pool. Buffers the pool does not take,
+	 * such as buffers it did not lease, buffers it already took back, or
+	 * read-only views, are left to the garbage collector.
+	 * 
+	 * @param buf
+	 *            the buffer to release
+	 * @return true if the buffer was taken back into the pool
+	 */
+	public boolean release(ByteBuffer buf) {
+		if (buf == null || !buf.isDirect() || buf.isReadOnly()) {
+			return false;
+		}
+		final int cls = this.classOf(buf.capacity());
+		if (cls == this.classes || buf.capacity() != this.sizeOf(cls)) {
+			return false;
+		}
+		final Lease lease = this.leased.remove(new Probe(buf));
+		if (lease == null) {
+			return false;
+		}
+		lease.clear();
+		this.releases.incrementAndGet();
+		buf.clear();
+		buf.order(ByteOrder.BIG_ENDIAN);
+		final Slot slot = lease.slot;
+		slot.buf = buf;
+		final Cache cache = this.caches.get();
+		if (cache != null && cache.count[cls] < CACHE_SIZE) {
+			cache.free[cls][cache.count[cls]++] = slot;
+		} else {
+			this.shared[cls].offer(slot);
+		}
+		return true;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		return "BufferPool[" + this.sizeOf(0) + ".."
+				+ this.sizeOf(this.classes - 1) + " bytes, leases="
+				+ this.leases() + ", hitRate=" + this.hitRate()
+				+ ", outstanding=" + this.outstanding() + ", leaked="
+				+ this.leaked() + ", allocated=" + this.allocatedBytes() + "]";
+	}
+
+	private Slot carve(int cls) {
+		final int size = this.sizeOf(cls);
+		final ByteBuffer slab = ByteBuffer.allocateDirect(Math.max(size,
+				SLAB_SIZE));
+		this.allocated.addAndGet(slab.capacity());
+		Slot first = null;
+		for (int offset = 0; offset < slab.capacity(); offset += size) {
+			final Slot slot = new Slot(slab, offset, cls);
+			slot.buf = this.slice(slot);
+			if (first == null) {
+				first = slot;
+			} else {
+				this.fresh[cls].offer(slot);
+			}
+		}
+		return first;
+	}
+
+	/**
+	 * Get the smallest size class that holds the given number of bytes.
+	 * 
+	 * @return the size class, or the number of classes if there is none
+	 */
+	private int classOf(int size) {
+		if (size <= 1) {
+			return 0;
+		}
+		final int shift = 32 - Integer.numberOfLeadingZeros(size - 1);
+		return Math.min(Math.max(shift - this.minShift, 0), this.classes);
+	}
+
+	/**
+	 * Carve new buffers at the places of leased buffers that were collected.
+	 */
+	private void reclaim() {
+		Lease stale;
+		while ((stale = (Lease) this.collected.poll()) != null) {
+			if (this.leased.remove(stale) == null) {
+				continue;
+			}
+			this.leaked.incrementAndGet();
+			final Slot slot = stale.slot;
+			slot.buf = this.slice(slot);
+			this.fresh[slot.cls].offer(slot);
+		}
+	}
+
+	private int sizeOf(int cls) {
+		return 1 << (this.minShift + cls);
+	}
+
+	private ByteBuffer slice(Slot slot) {
+		final ByteBuffer slab = slot.slab.duplicate();
+		slab.limit(slot.offset + this.sizeOf(slot.cls));
+		slab.position(slot.offset);
+		return slab.slice();
+	}
+
+}
@@ -0,0 +1,77 @@
+/**
+ * File BufferSerializer.java
+ * 
+ * This file is part of the eu.artemis.demanes project.
+ *
+ * Copyright 2014 TNO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.artemis.demanes.lib;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+import eu.artemis.demanes.lib.exceptions.SerializationException;
+
+/**
+ * <h1>BufferSerializer</h1>
+ * 
+ * <p>
+ * A {@link Serializer} which also works in place on {@link ByteBuffer}s, heap
+ * or direct, such as the ones a {@link MessageDispatcher} or
+ * {@link eu.artemis.demanes.lib.services.RESTService} receives and returns.
+ * This avoids copying every message from a buffer to an array and back.
+ * </p>
+ * 
+ * <p>
+ * Any plain Serializer can be used as a BufferSerializer through a
+ * {@link SerializerAdapter}, which copies between buffers and arrays.
+ * </p>
+ *
+ * @author DEMANES
+ * @version 0.1
+ * @since 18 okt. 2026
+ *
+ */
+public interface BufferSerializer extends Serializer {
+
+	/**
+	 * Deserializes an object from the current position of the buffer, and
+	 * moves the position past it. A serializer whose encoding does not tell
+	 * where an object ends reads all remaining bytes.
+	 * 
+	 * @param buf
+	 *            the buffer to deserialize from
+	 * @return the object represented by the bytes read
+	 * @throws SerializationException
+	 */
+	public Object deserialize(ByteBuffer buf) throws SerializationException;
+
+	/**
+	 * Serializes an object at the current position of the buffer, and moves
+	 * the position past it. If the object does not fit, nothing is written.
+	 * 
+	 * @param obj
+	 *            the object to serialize
+	 * @param buf
+	 *            the buffer to serialize to
+	 * @throws SerializationException
+	 * @throws BufferOverflowException
+	 *             if the object does not fit in the remaining bytes of the
+	 *             buffer
+	 */
+	public void serialize(Object obj, ByteBuffer buf)
+			throws SerializationException;
+
+}
@@ -0,0 +1,87 @@
+/**
+ * File Codec.java
+ * 
+ * This file is part of the eu.artemis.demanes project.
+ *
+ * Copyright 2014 TNO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.artemis.demanes.lib;
+
+import java.nio.ByteBuffer;
+
+import eu.artemis.demanes.lib.exceptions.SerializationException;
+
+/**
+ * <h1>Codec</h1>
+ * 
+ * <p>
+ * Hand-written binary encoding of the values of one type, as registered with
+ * a {@link CodecSerializer}. A codec only writes the value itself; the
+ * serializer writes the tag which tells the reader what codec to use.
+ * </p>
+ * 
+ * <p>
+ * The serializer asks for the {@linkplain #size(Object) size} of a value
+ * before writing it, so that a codec never has to deal with a buffer that is
+ * too small, and a value is either written completely or not at all.
+ * </p>
+ *
+ * @author DEMANES
+ * @version 0.1
+ * @since 18 okt. 2026
+ *
+ * @param <T>
+ *            the type of values encoded
+ */
+public interface Codec<T> {
+
+	/**
+	 * Read a value from the current position of the buffer.
+	 * 
+	 * @param buf
+	 *            the buffer to read from
+	 * @return the value read
+	 * @throws SerializationException
+	 *             if the buffer does not hold a valid value at its position
+	 */
+	public T read(ByteBuffer buf) throws SerializationException;
+
+	/**
+	 * Get the number of bytes the value takes when written. The size may be
+	 * larger than what {@link #write(ByteBuffer, Object)} ends up writing, but
+	 * never smaller.
+	 * 
+	 * @param value
+	 *            the value to write, never null
+	 * @return the encoded size in bytes, or an upper bound of it
+	 * @throws SerializationException
+	 *             if the value can't be encoded
+	 */
+	public int size(T value) throws SerializationException;
+
+	/**
+	 * Write a value at the current position of the buffer.
+	 * 
+	 * @param buf
+	 *            the buffer to write to, with at least {@link #size(Object)}
+	 *            bytes remaining
+	 * @param value
+	 *            the value to write, never null
+	 * @throws SerializationException
+	 *             if the value can't be encoded
+	 */
+	public void write(ByteBuffer buf, T value) throws SerializationException;
+
+}
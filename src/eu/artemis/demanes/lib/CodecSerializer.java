@@ -0,0 +1,589 @@
+/**
+ * File CodecSerializer.java
+ * 
+ * This file is part of the eu.artemis.demanes project.
+ *
+ * Copyright 2014 TNO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.artemis.demanes.lib;
+
+import java.io.Serializable;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import eu.artemis.demanes.datatypes.ANES_URN;
+import eu.artemis.demanes.datatypes.PrimitiveBundle;
+import eu.artemis.demanes.datatypes.TypedBundle;
+import eu.artemis.demanes.exceptions.NonExistentKeyException;
+import eu.artemis.demanes.lib.exceptions.SerializationException;
+
+/**
+ * <h1>CodecSerializer</h1>
+ * 
+ * <p>
+ * Serializer which picks a hand-written {@link Codec} for every value by its
+ * type, and only falls back to default Java serialization for serializable
+ * types without a codec. Every value is written as a {@link Varint} tag,
+ * identifying its codec, followed by what the codec writes.
+ * </p>
+ * 
+ * <p>
+ * Built in are the codecs of null, the boxed primitives, strings,
+ * {@link ANES_URN}s through a {@link URNSerializer}, {@link TypedBundle}s, and
+ * arrays of primitives, strings and objects. Bundles and object arrays hold
+ * tagged values themselves, so their elements use the codecs of this
+ * serializer as well. Bundles are read back as a {@link PrimitiveBundle}.
+ * </p>
+ * 
+ * <p>
+ * Applications {@linkplain #register(int, Class, Codec) register} codecs of
+ * their own under tags from {@link #FIRST_USER_TAG}, which both ends must
+ * agree on. A codec registered for a class is only used for that exact class,
+ * so that a value is read back as the type it was written as; a codec
+ * registered for an interface is used for all its implementations.
+ * </p>
+ * 
+ * <p>
+ * Values without a codec are serialized only once per call of
+ * {@link #serialize(Object)}: the bytes found when sizing the value are kept
+ * until it is written. Nested arrays and bundles are read to a depth of at
+ * most {@value #MAX_DEPTH}.
+ * </p>
+ * 
+ * <p>
+ * Codecs are registered while configuring the serializer; after that it may
+ * be shared between threads, as long as its {@link URNSerializer} can.
+ * </p>
+ *
+ * @author DEMANES
+ * @version 0.1
+ * @since 18 okt. 2026
+ *
+ */
+public class CodecSerializer implements BufferSerializer {
+
+	/**
+	 * The Java serialization of a value, kept from sizing the value until it
+	 * is written.
+	 */
+	private static final class Pending {
+
+		private final byte[] bytes;
+
+		private final Object value;
+
+		Pending(Object value, byte[] bytes) {
+			this.value = value;
+			this.bytes = bytes;
+		}
+
+	}
+
+	private static final class Registration {
+
+		private final Codec<Object> codec;
+
+		private final int tag;
+
+		private final Class<?> type;
+
+		@SuppressWarnings("unchecked")
+		Registration(int tag, Class<?> type, Codec<?> codec) {
+			this.tag = tag;
+			this.type = type;
+			this.codec = (Codec<Object>) codec;
+		}
+
+	}
+
+	/**
+	 * The lowest tag available for application codecs. Lower tags are
+	 * reserved for the built-in codecs.
+	 */
+	public static final int FIRST_USER_TAG = 32;
+
+	/**
+	 * The deepest nesting of arrays and bundles read.
+	 */
+	public static final int MAX_DEPTH = 64;
+
+	private static final int NULL = 0;
+
+	private static final int SERIALIZED = FIRST_USER_TAG - 1;
+
+	/**
+	 * The nesting of arrays and bundles being read by every thread.
+	 */
+	private final ThreadLocal<int[]> depth = new ThreadLocal<int[]>() {
+
+		@Override
+		protected int[] initialValue() {
+			return new int[1];
+		}
+
+	};
+
+	/**
+	 * The serialized values sized and not yet written by every thread, or
+	 * null outside of {@link #serialize(Object)}.
+	 */
+	private final ThreadLocal<Queue<Pending>> pending = new ThreadLocal<Queue<Pending>>();
+
+	private final Map<Class<?>, Registration> registered = new ConcurrentHashMap<Class<?>, Registration>();
+
+	private final List<Registration> interfaces = new CopyOnWriteArrayList<Registration>();
+
+	private final Map<Class<?>, Registration> resolved = new ConcurrentHashMap<Class<?>, Registration>();
+
+	private volatile Registration[] tags = new Registration[FIRST_USER_TAG];
+
+	/**
+	 * Create a serializer which always writes the full text of URNs.
+	 */
+	public CodecSerializer() {
+		this(new URNSerializer());
+	}
+
+	/**
+	 * Create a serializer which writes URNs with the given serializer, for
+	 * instance one that uses the dictionaries of a session.
+	 * 
+	 * @param urns
+	 *            the serializer of URNs
+	 */
+	public CodecSerializer(final URNSerializer urns) {
+		if (urns == null) {
+			throw new IllegalArgumentException("A URN serializer is required");
+		}
+		this.tags[SERIALIZED] = new Registration(SERIALIZED,
+				Serializable.class, new Codec<Serializable>() {
+
+					@Override
+					public Serializable read(ByteBuffer buf)
+							throws SerializationException {
+						return Codecs.SERIALIZED.read(buf);
+					}
+
+					@Override
+					public int size(Serializable value)
+							throws SerializationException {
+						final byte[] bytes = Codecs.serialize(value);
+						final Queue<Pending> kept = CodecSerializer.this.pending
+								.get();
+						if (kept != null) {
+							kept.add(new Pending(value, bytes));
+						}
+						return Varint.size(bytes.length) + bytes.length;
+					}
+
+					@Override
+					public void write(ByteBuffer buf, Serializable value)
+							throws SerializationException {
+						final byte[] bytes = CodecSerializer.this
+								.serialized(value);
+						Varint.write(buf, bytes.length);
+						buf.put(bytes);
+					}
+
+				});
+		this.add(1, Boolean.class, Codecs.BOOLEAN);
+		this.add(2, Byte.class, Codecs.BYTE);
+		this.add(3, Short.class, Codecs.SHORT);
+		this.add(4, Character.class, Codecs.CHARACTER);
+		this.add(5, Integer.class, Codecs.INTEGER);
+		this.add(6, Long.class, Codecs.LONG);
+		this.add(7, Float.class, Codecs.FLOAT);
+		this.add(8, Double.class, Codecs.DOUBLE);
+		this.add(9, String.class, Codecs.STRING);
+		this.add(10, ANES_URN.class, new Codec<ANES_URN>() {
+
+			@Override
+			public ANES_URN read(ByteBuffer buf) throws SerializationException {
+				return urns.read(buf);
+			}
+
+			@Override
+			public int size(ANES_URN value) {
+				return urns.maxSize(value);
+			}
+
+			@Override
+			public void write(ByteBuffer buf, ANES_URN value) {
+				urns.write(buf, value);
+			}
+
+		});
+		this.add(11, TypedBundle.class, new Codec<TypedBundle>() {
+
+			@Override
+			public TypedBundle read(ByteBuffer buf)
+					throws SerializationException {
+				return CodecSerializer.this.readBundle(buf);
+			}
+
+			@Override
+			public int size(TypedBundle value) throws SerializationException {
+				return CodecSerializer.this.sizeOfBundle(value);
+			}
+
+			@Override
+			public void write(ByteBuffer buf, TypedBundle value)
+					throws SerializationException {
+				CodecSerializer.this.writeBundle(buf, value);
+			}
+
+		});
+		this.add(12, byte[].class, Codecs.BYTE_ARRAY);
+		this.add(13, int[].class, Codecs.INT_ARRAY);
+		this.add(14, long[].class, Codecs.LONG_ARRAY);
+		this.add(15, double[].class, Codecs.DOUBLE_ARRAY);
+		this.add(16, String[].class, Codecs.STRING_ARRAY);
+		this.add(17, Object[].class, new Codec<Object[]>() {
+
+			@Override
+			public Object[] read(ByteBuffer buf) throws SerializationException {
+				final Object[] value = new Object[Codecs.length(buf, 1)];
+				CodecSerializer.this.enter();
+				try {
+					for (int i = 0; i < value.length; i++) {
+						value[i] = CodecSerializer.this.read(buf);
+					}
+				} finally {
+					CodecSerializer.this.leave();
+				}
+				return value;
+			}
+
+			@Override
+			public int size(Object[] value) throws SerializationException {
+				int size = Varint.size(value.length);
+				for (Object element : value) {
+					size += CodecSerializer.this.size(element);
+				}
+				return size;
+			}
+
+			@Override
+			public void write(ByteBuffer buf, Object[] value)
+					throws SerializationException {
+				Varint.write(buf, value.length);
+				for (Object element : value) {
+					CodecSerializer.this.write(buf, element);
+				}
+			}
+
+		});
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Object deserialize(byte[] b) throws SerializationException {
+		final ByteBuffer buf = ByteBuffer.wrap(b);
+		final Object obj = this.read(buf);
+		if (buf.hasRemaining()) {
+			throw new SerializationException(buf.remaining()
+					+ " trailing bytes after value");
+		}
+		return obj;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Object deserialize(ByteBuffer buf) throws SerializationException {
+		return this.read(buf);
+	}
+
+	/**
+	 * Read a tagged value from the current position of the buffer.
+	 * 
+	 * @param buf
+	 *            the buffer to read from
+	 * @return the value read
+	 * @throws SerializationException
+	 *             if the buffer does not hold a valid value at its position
+	 */
+	public Object read(ByteBuffer buf) throws SerializationException {
+		try {
+			final int tag = Varint.read(buf);
+			if (tag == NULL) {
+				return null;
+			}
+			final Registration[] tags = this.tags;
+			if (tag >= tags.length || tags[tag] == null) {
+				throw new SerializationException("Unknown tag " + tag);
+			}
+			return tags[tag].codec.read(buf);
+		} catch (BufferUnderflowException e) {
+			throw new SerializationException("Truncated value", e);
+		} catch (IllegalArgumentException e) {
+			throw new SerializationException("Invalid tag", e);
+		}
+	}
+
+	/**
+	 * Register the codec of an application type.
+	 * 
+	 * @param tag
+	 *            the tag of the codec, at least {@link #FIRST_USER_TAG}
+	 * @param type
+	 *            the class or interface of the values of the codec
+	 * @param codec
+	 *            the codec
+	 * @throws IllegalArgumentException
+	 *             if the tag is reserved, or the tag or type already has a
+	 *             codec
+	 */
+	public synchronized <T> void register(int tag, Class<T> type,
+			Codec<T> codec) {
+		if (tag < FIRST_USER_TAG) {
+			throw new IllegalArgumentException("Tag " + tag + " is reserved");
+		}
+		this.add(tag, type, codec);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public byte[] serialize(Object obj) throws SerializationException {
+		final Queue<Pending> outer = this.pending.get();
+		this.pending.set(new ArrayDeque<Pending>());
+		try {
+			final ByteBuffer buf = ByteBuffer.allocate(this.size(obj));
+			this.write(buf, obj);
+			if (buf.hasRemaining()) {
+				return Arrays.copyOf(buf.array(), buf.position());
+			}
+			return buf.array();
+		} finally {
+			this.pending.set(outer);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * <p>
+	 * The value is only written if its {@linkplain #size(Object) size} fits,
+	 * which may be an upper bound.
+	 * </p>
+	 */
+	@Override
+	public void serialize(Object obj, ByteBuffer buf)
+			throws SerializationException {
+		final Queue<Pending> outer = this.pending.get();
+		this.pending.set(new ArrayDeque<Pending>());
+		try {
+			if (this.size(obj) > buf.remaining()) {
+				throw new BufferOverflowException();
+			}
+			this.write(buf, obj);
+		} finally {
+			this.pending.set(outer);
+		}
+	}
+
+	/**
+	 * Get the number of bytes the value takes when written by this
+	 * serializer, including its tag. This may be an upper bound, as for
+	 * {@link Codec#size(Object)}.
+	 * 
+	 * @param obj
+	 *            the value to write
+	 * @return the encoded size in bytes
+	 * @throws SerializationException
+	 *             if there is no codec for the value
+	 */
+	public int size(Object obj) throws SerializationException {
+		if (obj == null) {
+			return 1;
+		}
+		final Registration reg = this.resolve(obj.getClass());
+		return Varint.size(reg.tag) + reg.codec.size(obj);
+	}
+
+	/**
+	 * Write a tagged value at the current position of the buffer.
+	 * 
+	 * @param buf
+	 *            the buffer to write to, with at least {@link #size(Object)}
+	 *            bytes remaining
+	 * @param obj
+	 *            the value to write
+	 * @throws SerializationException
+	 *             if there is no codec for the value
+	 */
+	public void write(ByteBuffer buf, Object obj)
+			throws SerializationException {
+		if (obj == null) {
+			Varint.write(buf, NULL);
+			return;
+		}
+		final Registration reg = this.resolve(obj.getClass());
+		Varint.write(buf, reg.tag);
+		reg.codec.write(buf, obj);
+	}
+
+	private void add(int tag, Class<?> type, Codec<?> codec) {
+		if (type == null || codec == null) {
+			throw new IllegalArgumentException("Type and codec are required");
+		}
+		Registration[] tags = this.tags;
+		if (tag < tags.length && tags[tag] != null) {
+			throw new IllegalArgumentException("Tag " + tag
+					+ " is already registered for " + tags[tag].type);
+		}
+		if (this.registered.containsKey(type)) {
+			throw new IllegalArgumentException("Type " + type
+					+ " is already registered");
+		}
+		final Registration reg = new Registration(tag, type, codec);
+		tags = Arrays.copyOf(tags, Math.max(tags.length, tag + 1));
+		tags[tag] = reg;
+		this.registered.put(type, reg);
+		if (type.isInterface()) {
+			this.interfaces.add(reg);
+		}
+		this.resolved.clear();
+		this.tags = tags;
+	}
+
+	/**
+	 * Go one level deeper into nested values being read.
+	 * 
+	 * @throws SerializationException
+	 *             if the values are nested too deeply
+	 */
+	private void enter() throws SerializationException {
+		final int[] depth = this.depth.get();
+		if (depth[0] == MAX_DEPTH) {
+			throw new SerializationException("Values nested deeper than "
+					+ MAX_DEPTH);
+		}
+		depth[0]++;
+	}
+
+	private void leave() {
+		this.depth.get()[0]--;
+	}
+
+	private TypedBundle readBundle(ByteBuffer buf)
+			throws SerializationException {
+		final int count = Codecs.length(buf, 2);
+		final TypedBundle bundle = new PrimitiveBundle(count);
+		this.enter();
+		try {
+			for (int i = 0; i < count; i++) {
+				final String key = Codecs.STRING.read(buf);
+				final Object value = this.read(buf);
+				if (value != null && !(value instanceof Serializable)) {
+					throw new SerializationException("Bundle value of " + key
+							+ " is not serializable: " + value.getClass());
+				}
+				bundle.put(key, (Serializable) value);
+			}
+		} finally {
+			this.leave();
+		}
+		return bundle;
+	}
+
+	private Registration resolve(Class<?> type)
+			throws SerializationException {
+		Registration reg = this.registered.get(type);
+		if (reg != null) {
+			return reg;
+		}
+		reg = this.resolved.get(type);
+		if (reg != null) {
+			return reg;
+		}
+		for (Registration candidate : this.interfaces) {
+			if (candidate.type.isAssignableFrom(type)) {
+				reg = candidate;
+				break;
+			}
+		}
+		if (reg == null) {
+			if (!Serializable.class.isAssignableFrom(type)) {
+				throw new SerializationException("No codec for " + type);
+			}
+			reg = this.tags[SERIALIZED];
+		}
+		this.resolved.put(type, reg);
+		return reg;
+	}
+
+	/**
+	 * Get the Java serialization of a value being written, as kept when it
+	 * was sized if it was.
+	 */
+	private byte[] serialized(Serializable value)
+			throws SerializationException {
+		final Queue<Pending> pending = this.pending.get();
+		if (pending != null) {
+			final Pending next = pending.poll();
+			if (next != null && next.value == value) {
+				return next.bytes;
+			}
+			// Not written in the order sized, so forget what was kept
+			pending.clear();
+		}
+		return Codecs.serialize(value);
+	}
+
+	private int sizeOfBundle(TypedBundle bundle)
+			throws SerializationException {
+		final Set<String> keys = bundle.keySet();
+		int size = Varint.size(keys.size());
+		for (String key : keys) {
+			size += Codecs.STRING.size(key)
+					+ this.size(this.value(bundle, key));
+		}
+		return size;
+	}
+
+	private Object value(TypedBundle bundle, String key) {
+		try {
+			return bundle.get(key);
+		} catch (NonExistentKeyException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private void writeBundle(ByteBuffer buf, TypedBundle bundle)
+			throws SerializationException {
+		final Set<String> keys = bundle.keySet();
+		Varint.write(buf, keys.size());
+		for (String key : keys) {
+			Codecs.STRING.write(buf, key);
+			this.write(buf, this.value(bundle, key));
+		}
+	}
+
+}
@@ -0,0 +1,541 @@
+/**
+ * File Codecs.java
+ * 
+ * This file is part of the eu.artemis.demanes project.
+ *
+ * Copyright 2014 TNO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.artemis.demanes.lib;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import eu.artemis.demanes.lib.exceptions.SerializationException;
+
+/**
+ * <h1>Codecs</h1>
+ * 
+ * <p>
+ * The built-in {@link Codec}s of values which need no other codec. Numbers
+ * are written in their fixed size in big-endian byte order, strings as a
+ * {@link Varint} length followed by their UTF-8 bytes, and arrays as a
+ * {@link Varint} length followed by their elements.
+ * </p>
+ *
+ * @author DEMANES
+ * @version 0.1
+ * @since 18 okt. 2026
+ *
+ */
+public final class Codecs {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	/**
+	 * Codec of booleans, as a single byte.
+	 */
+	public static final Codec<Boolean> BOOLEAN = new Codec<Boolean>() {
+
+		@Override
+		public Boolean read(ByteBuffer buf) {
+			return Boolean.valueOf(buf.get() != 0);
+		}
+
+		@Override
+		public int size(Boolean value) {
+			return 1;
+		}
+
+		@Override
+		public void write(ByteBuffer buf, Boolean value) {
+			buf.put(value.booleanValue() ? (byte) 1 : (byte) 0);
+		}
+
+	};
+
+	/**
+	 * Codec of bytes.
+	 */
+	public static final Codec<Byte> BYTE = new Codec<Byte>() {
+
+		@Override
+		public Byte read(ByteBuffer buf) {
+			return Byte.valueOf(buf.get());
+		}
+
+		@Override
+		public int size(Byte value) {
+			return 1;
+		}
+
+		@Override
+		public void write(ByteBuffer buf, Byte value) {
+			buf.put(value.byteValue());
+		}
+
+	};
+
+	/**
+	 * Codec of byte arrays.
+	 */
+	public static final Codec<byte[]> BYTE_ARRAY = new Codec<byte[]>() {
+
+		@Override
+		public byte[] read(ByteBuffer buf) throws SerializationException {
+			final byte[] value = new byte[Codecs.length(buf, 1)];
+			buf.get(value);
+			return value;
+		}
+
+		@Override
+		public int size(byte[] value) {
+			return Varint.size(value.length) + value.length;
+		}
+
+		@Override
+		public void write(ByteBuffer buf, byte[] value) {
+			Varint.write(buf, value.length);
+			buf.put(value);
+		}
+
+	};
+
+	/**
+	 * Codec of characters.
+	 */
+	public static final Codec<Character> CHARACTER = new Codec<Character>() {
+
+		@Override
+		public Character read(ByteBuffer buf) {
+			return Character.valueOf(buf.getChar());
+		}
+
+		@Override
+		public int size(Character value) {
+			return 2;
+		}
+
+		@Override
+		public void write(ByteBuffer buf, Character value) {
+			buf.putChar(value.charValue());
+		}
+
+	};
+
+	/**
+	 * Codec of doubles.
+	 */
+	public static final Codec<Double> DOUBLE = new Codec<Double>() {
+
+		@Override
+		public Double read(ByteBuffer buf) {
+			return Double.valueOf(buf.getDouble());
+		}
+
+		@Override
+		public int size(Double value) {
+			return 8;
+		}
+
+		@Override
+		public void write(ByteBuffer buf, Double value) {
+			buf.putDouble(value.doubleValue());
+		}
+
+	};
+
+	/**
+	 * Codec of double arrays.
+	 */
+	public static final Codec<double[]> DOUBLE_ARRAY = new Codec<double[]>() {
+
+		@Override
+		public double[] read(ByteBuffer buf) throws SerializationException {
+			final double[] value = new double[Codecs.length(buf, 8)];
+			buf.asDoubleBuffer().get(value);
+			buf.position(buf.position() + 8 * value.length);
+			return value;
+		}
+
+		@Override
+		public int size(double[] value) {
+			return Varint.size(value.length) + 8 * value.length;
+		}
+
+		@Override
+		public void write(ByteBuffer buf, double[] value) {
+			Varint.write(buf, value.length);
+			buf.asDoubleBuffer().put(value);
+			buf.position(buf.position() + 8 * value.length);
+		}
+
+	};
+
+	/**
+	 * Codec of floats.
+	 */
+	public static final Codec<Float> FLOAT = new Codec<Float>() {
+
+		@Override
+		public Float read(ByteBuffer buf) {
+			return Float.valueOf(buf.getFloat());
+		}
+
+		@Override
+		public int size(Float value) {
+			return 4;
+		}
+
+		@Override
+		public void write(ByteBuffer buf, Float value) {
+			buf.putFloat(value.floatValue());
+		}
+
+	};
+
+	/**
+	 * Codec of int arrays.
+	 */
+	public static final Codec<int[]> INT_ARRAY = new Codec<int[]>() {
+
+		@Override
+		public int[] read(ByteBuffer buf) throws SerializationException {
+			final int[] value = new int[Codecs.length(buf, 4)];
+			buf.asIntBuffer().get(value);
+			buf.position(buf.position() + 4 * value.length);
+			return value;
+		}
+
+		@Override
+		public int size(int[] value) {
+			return Varint.size(value.length) + 4 * value.length;
+		}
+
+		@Override
+		public void write(ByteBuffer buf, int[] value) {
+			Varint.write(buf, value.length);
+			buf.asIntBuffer().put(value);
+			buf.position(buf.position() + 4 * value.length);
+		}
+
+	};
+
+	/**
+	 * Codec of integers.
+	 */
+	public static final Codec<Integer> INTEGER = new Codec<Integer>() {
+
+		@Override
+		public Integer read(ByteBuffer buf) {
+			return Integer.valueOf(buf.getInt());
+		}
+
+		@Override
+		public int size(Integer value) {
+			return 4;
+		}
+
+		@Override
+		public void write(ByteBuffer buf, Integer value) {
+			buf.putInt(value.intValue());
+		}
+
+	};
+
+	/**
+	 * Codec of longs.
+	 */
+	public static final Codec<Long> LONG = new Codec<Long>() {
+
+		@Override
+		public Long read(ByteBuffer buf) {
+			return Long.valueOf(buf.getLong());
+		}
+
+		@Override
+		public int size(Long value) {
+			return 8;
+		}
+
+		@Override
+		public void write(ByteBuffer buf, Long value) {
+			buf.putLong(value.longValue());
+		}
+
+	};
+
+	/**
+	 * Codec of long arrays.
+	 */
+	public static final Codec<long[]> LONG_ARRAY = new Codec<long[]>() {
+
+		@Override
+		public long[] read(ByteBuffer buf) throws SerializationException {
+			final long[] value = new long[Codecs.length(buf, 8)];
+			buf.asLongBuffer().get(value);
+			buf.position(buf.position() + 8 * value.length);
+			return value;
+		}
+
+		@Override
+		public int size(long[] value) {
+			return Varint.size(value.length) + 8 * value.length;
+		}
+
+		@Override
+		public void write(ByteBuffer buf, long[] value) {
+			Varint.write(buf, value.length);
+			buf.asLongBuffer().put(value);
+			buf.position(buf.position() + 8 * value.length);
+		}
+
+	};
+
+	/**
+	 * Codec of any serializable object, as a {@link Varint} length followed
+	 * by its default Java serialization. This is the fallback for values
+	 * without a codec of their own. Its size can only be known by serializing
+	 * the value, which this codec does again when writing it; a
+	 * {@link CodecSerializer} keeps the bytes from sizing a value until it
+	 * writes it instead.
+	 */
+	public static final Codec<Serializable> SERIALIZED = new Codec<Serializable>() {
+
+		@Override
+		public Serializable read(ByteBuffer buf) throws SerializationException {
+			final int length = Codecs.length(buf, 1);
+			final ByteArrayInputStream bytes;
+			if (buf.hasArray()) {
+				bytes = new ByteArrayInputStream(buf.array(), buf.arrayOffset()
+						+ buf.position(), length);
+				buf.position(buf.position() + length);
+			} else {
+				final byte[] copy = new byte[length];
+				buf.get(copy);
+				bytes = new ByteArrayInputStream(copy);
+			}
+			try {
+				final ObjectInputStream in = new ObjectInputStream(bytes);
+				return (Serializable) in.readObject();
+			} catch (IOException e) {
+				throw new SerializationException("Invalid serialized object",
+						e);
+			} catch (ClassNotFoundException e) {
+				throw new SerializationException("Unknown serialized class", e);
+			}
+		}
+
+		@Override
+		public int size(Serializable value) throws SerializationException {
+			final int length = Codecs.serialize(value).length;
+			return Varint.size(length) + length;
+		}
+
+		@Override
+		public void write(ByteBuffer buf, Serializable value)
+				throws SerializationException {
+			final byte[] bytes = Codecs.serialize(value);
+			Varint.write(buf, bytes.length);
+			buf.put(bytes);
+		}
+
+	};
+
+	/**
+	 * Codec of shorts.
+	 */
+	public static final Codec<Short> SHORT = new Codec<Short>() {
+
+		@Override
+		public Short read(ByteBuffer buf) {
+			return Short.valueOf(buf.getShort());
+		}
+
+		@Override
+		public int size(Short value) {
+			return 2;
+		}
+
+		@Override
+		public void write(ByteBuffer buf, Short value) {
+			buf.putShort(value.shortValue());
+		}
+
+	};
+
+	/**
+	 * Codec of strings.
+	 */
+	public static final Codec<String> STRING = new Codec<String>() {
+
+		@Override
+		public String read(ByteBuffer buf) throws SerializationException {
+			final int length = Codecs.length(buf, 1);
+			if (buf.hasArray()) {
+				final String value = new String(buf.array(), buf.arrayOffset()
+						+ buf.position(), length, UTF_8);
+				buf.position(buf.position() + length);
+				return value;
+			}
+			final byte[] bytes = new byte[length];
+			buf.get(bytes);
+			return new String(bytes, UTF_8);
+		}
+
+		@Override
+		public int size(String value) {
+			final int length = Codecs.utf8Length(value);
+			return Varint.size(length) + length;
+		}
+
+		@Override
+		public void write(ByteBuffer buf, String value) {
+			final byte[] bytes = value.getBytes(UTF_8);
+			Varint.write(buf, bytes.length);
+			buf.put(bytes);
+		}
+
+	};
+
+	/**
+	 * Codec of string arrays. The elements may be null.
+	 */
+	public static final Codec<String[]> STRING_ARRAY = new Codec<String[]>() {
+
+		@Override
+		public String[] read(ByteBuffer buf) throws SerializationException {
+			final String[] value = new String[Codecs.length(buf, 1)];
+			for (int i = 0; i < value.length; i++) {
+				if (buf.get() != 0) {
+					value[i] = STRING.read(buf);
+				}
+			}
+			return value;
+		}
+
+		@Override
+		public int size(String[] value) throws SerializationException {
+			int size = Varint.size(value.length) + value.length;
+			for (String element : value) {
+				if (element != null) {
+					size += STRING.size(element);
+				}
+			}
+			return size;
+		}
+
+		@Override
+		public void write(ByteBuffer buf, String[] value)
+				throws SerializationException {
+			Varint.write(buf, value.length);
+			for (String element : value) {
+				if (element == null) {
+					buf.put((byte) 0);
+				} else {
+					buf.put((byte) 1);
+					STRING.write(buf, element);
+				}
+			}
+		}
+
+	};
+
+	private Codecs() {
+	}
+
+	/**
+	 * Read the {@link Varint} length of a string or array, and check that
+	 * the buffer holds at least that many elements.
+	 * 
+	 * @param buf
+	 *            the buffer to read from
+	 * @param width
+	 *            the minimum number of bytes of an element
+	 * @return the length read
+	 * @throws SerializationException
+	 *             if the length is invalid or exceeds the buffer
+	 */
+	static int length(ByteBuffer buf, int width)
+			throws SerializationException {
+		final int length;
+		try {
+			length = Varint.read(buf);
+		} catch (IllegalArgumentException e) {
+			throw new SerializationException("Invalid length", e);
+		}
+		if (length > buf.remaining() / width) {
+			throw new SerializationException("Length " + length
+					+ " exceeds the " + buf.remaining() + " bytes remaining");
+		}
+		return length;
+	}
+
+	/**
+	 * Get the default Java serialization of a value.
+	 * 
+	 * @param value
+	 *            the value to serialize
+	 * @return the serialized bytes
+	 * @throws SerializationException
+	 *             if the value can not be serialized
+	 */
+	static byte[] serialize(Serializable value)
+			throws SerializationException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try {
+			final ObjectOutputStream out = new ObjectOutputStream(bytes);
+			out.writeObject(value);
+			out.close();
+		} catch (IOException e) {
+			throw new SerializationException("Cannot serialize "
+					+ value.getClass(), e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Get the number of bytes of the UTF-8 encoding of the string, without
+	 * encoding it. Unpaired surrogates are encoded as a single replacement
+	 * byte, as {@link String#getBytes(Charset)} does.
+	 */
+	private static int utf8Length(String value) {
+		final int chars = value.length();
+		int length = chars;
+		for (int i = 0; i < chars; i++) {
+			final char c = value.charAt(i);
+			if (c < 0x80) {
+				continue;
+			}
+			if (c < 0x800) {
+				length += 1;
+			} else if (c < Character.MIN_SURROGATE
+					|| c > Character.MAX_SURROGATE) {
+				length += 2;
+			} else if (Character.isHighSurrogate(c) && i + 1 < chars
+					&& Character.isLowSurrogate(value.charAt(i + 1))) {
+				length += 2;
+				i++;
+			}
+		}
+		return length;
+	}
+
+}
@@ -0,0 +1,156 @@
+/**
+ * File CopyOnWriteDispatcherRegistry.java
+ * 
+ * This file is part of the eu.artemis.demanes project.
+ *
+ * Copyright 2014 TNO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.artemis.demanes.lib;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * <h1>CopyOnWriteDispatcherRegistry</h1>
+ * 
+ * <p>
+ * A {@link MessageDispatcherRegistry} for dispatchers that are added and
+ * removed rarely, but read for every message by many threads. The dispatchers
+ * are kept in an immutable array, which every change replaces by a modified
+ * copy with an atomic compare-and-set. Reading the dispatchers is a single
+ * volatile read, which never waits, and a change never holds up a dispatch in
+ * progress, which goes on with the dispatchers it started with.
+ * </p>
+ * 
+ * <p>
+ * As a {@link MessageDispatcher}, the registry offers every message to its
+ * dispatchers in the order they were added, until one of them responds.
+ * </p>
+ *
+ * @author DEMANES
+ * @version 0.1
+ * @since 18 okt. 2026
+ *
+ */
+public class CopyOnWriteDispatcherRegistry implements
+		MessageDispatcherRegistry, MessageDispatcher {
+
+	private static final MessageDispatcher[] EMPTY = new MessageDispatcher[0];
+
+	private static int indexOf(MessageDispatcher[] dispatchers,
+			MessageDispatcher dispatcher) {
+		for (int i = 0; i < dispatchers.length; i++) {
+			if (dispatchers[i].equals(dispatcher)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private final AtomicReference<MessageDispatcher[]> snapshot = new AtomicReference<MessageDispatcher[]>(
+			EMPTY);
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void addDispatcher(MessageDispatcher dispatcher) {
+		if (dispatcher == null) {
+			throw new IllegalArgumentException("Dispatcher must be non-null");
+		}
+		MessageDispatcher[] current;
+		MessageDispatcher[] next;
+		do {
+			current = this.snapshot.get();
+			if (CopyOnWriteDispatcherRegistry.indexOf(current,
+					dispatcher) >= 0) {
+				return;
+			}
+			next = Arrays.copyOf(current, current.length + 1);
+			next[current.length] = dispatcher;
+		} while (!this.snapshot.compareAndSet(current, next));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean containsDispatcher(MessageDispatcher dispatcher) {
+		return CopyOnWriteDispatcherRegistry.indexOf(this.snapshot.get(),
+				dispatcher) >= 0;
+	}
+
+	/**
+	 * Offer the message to the dispatchers, each from the position it has
+	 * now, until one of them responds.
+	 * 
+	 * @param msg
+	 *            the message
+	 * @return the first response, or null if no dispatcher responds
+	 */
+	@Override
+	public ByteBuffer dispatchMessage(ByteBuffer msg) {
+		final MessageDispatcher[] dispatchers = this.snapshot.get();
+		if (dispatchers.length == 1) {
+			return dispatchers[0].dispatchMessage(msg);
+		}
+		for (MessageDispatcher dispatcher : dispatchers) {
+			final ByteBuffer response = dispatcher.dispatchMessage(msg
+					.duplicate());
+			if (response != null) {
+				return response;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Get the dispatchers registered at this moment, in the order they were
+	 * added. The array is shared by all readers, and must not be modified,
+	 * which is why only the connectors of this package get it.
+	 * 
+	 * @return the dispatchers
+	 */
+	MessageDispatcher[] dispatchers() {
+		return this.snapshot.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void removeDispatcher(MessageDispatcher dispatcher) {
+		MessageDispatcher[] current;
+		MessageDispatcher[] next;
+		do {
+			current = this.snapshot.get();
+			final int index = CopyOnWriteDispatcherRegistry.indexOf(current,
+					dispatcher);
+			if (index < 0) {
+				return;
+			}
+			if (current.length == 1) {
+				next = EMPTY;
+			} else {
+				next = new MessageDispatcher[current.length - 1];
+				System.arraycopy(current, 0, next, 0, index);
+				System.arraycopy(current, index + 1, next, index,
+						next.length - index);
+			}
+		} while (!this.snapshot.compareAndSet(current, next));
+	}
+
+}
@@ -0,0 +1,219 @@
+/**
+ * File CorrelatedDispatcher.java
+ * 
+ * This file is part of the eu.artemis.demanes project.
+ *
+ * Copyright 2014 TNO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.artemis.demanes.lib;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.BiFunction;
+
+/**
+ * <h1>CorrelatedDispatcher</h1>
+ * 
+ * <p>
+ * The receiving end of the requests of a {@link CorrelatedRequester}. Every
+ * request starts with a kind byte marking it a request and a correlation
+ * identifier, a big-endian int, which are stripped before the request is
+ * handed to the {@link AsyncMessageDispatcher} this dispatcher wraps. Every
+ * request gets a reply, which starts with a kind byte marking it a reply, the
+ * same identifier and a status byte: the response of the dispatcher follows,
+ * the dispatcher has no response, or the dispatcher failed. As the replies
+ * carry their identifier, many requests may be outstanding on a connection,
+ * and be answered in any order. As the kind tells requests and replies apart,
+ * both peers of a connection may send requests, each numbering its own.
+ * </p>
+ * 
+ * <p>
+ * The kind byte is the {@linkplain RoutedMessageDispatcher message type} of
+ * the frame: {@value #REQUEST_TYPE} for requests and {@value #REPLY_TYPE} for
+ * replies, the last two types. Both ends are routed dispatchers, so that they
+ * can share a {@link RoutingDispatcherRegistry} with other dispatchers, whose
+ * messages must then not use these types.
+ * </p>
+ * 
+ * <p>
+ * Responses leased from the {@link BufferPool} given to the dispatcher are
+ * released once they are copied into the reply.
+ * </p>
+ *
+ * @author DEMANES
+ * @version 0.1
+ * @since 18 okt. 2026
+ *
+ */
+public class CorrelatedDispatcher implements AsyncMessageDispatcher,
+		RoutedMessageDispatcher {
+
+	/**
+	 * The message type of requests.
+	 */
+	public static final int REQUEST_TYPE = 254;
+
+	/**
+	 * The message type of replies.
+	 */
+	public static final int REPLY_TYPE = 255;
+
+	/**
+	 * Kind of a request.
+	 */
+	static final byte REQUEST = (byte) REQUEST_TYPE;
+
+	/**
+	 * Kind of a reply.
+	 */
+	static final byte REPLY = (byte) REPLY_TYPE;
+
+	/**
+	 * Status of a reply holding a response.
+	 */
+	static final byte RESPONSE = 0;
+
+	/**
+	 * Status of a reply to a request without a response.
+	 */
+	static final byte NO_RESPONSE = 1;
+
+	/**
+	 * Status of a reply to a request that failed.
+	 */
+	static final byte FAILURE = 2;
+
+	/**
+	 * Size of the header of a request.
+	 */
+	static final int REQUEST_HEADER = 5;
+
+	/**
+	 * Size of the header of a reply.
+	 */
+	static final int REPLY_HEADER = 6;
+
+	private final AsyncMessageDispatcher dispatcher;
+
+	private final BufferPool pool;
+
+	/**
+	 * @param dispatcher
+	 *            the dispatcher of the requests
+	 */
+	public CorrelatedDispatcher(AsyncMessageDispatcher dispatcher) {
+		this(dispatcher, null);
+	}
+
+	/**
+	 * @param dispatcher
+	 *            the dispatcher of the requests
+	 * @param pool
+	 *            the pool the dispatcher leases its responses from, or null
+	 */
+	public CorrelatedDispatcher(AsyncMessageDispatcher dispatcher,
+			BufferPool pool) {
+		if (dispatcher == null) {
+			throw new IllegalArgumentException("Dispatcher must be non-null");
+		}
+		this.dispatcher = dispatcher;
+		this.pool = pool;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * <p>
+	 * A message which is not a request, such as a reply to a request of this
+	 * end, gets no reply.
+	 * </p>
+	 */
+	@Override
+	public CompletionStage<ByteBuffer> dispatchAsync(ByteBuffer msg) {
+		if (msg.remaining() < REQUEST_HEADER
+				|| msg.get(msg.position()) != REQUEST) {
+			return CompletableFuture.completedFuture(null);
+		}
+		final int id = msg.getInt(msg.position() + 1);
+		final ByteBuffer request = msg.duplicate();
+		request.position(request.position() + REQUEST_HEADER);
+		final CompletionStage<ByteBuffer> response;
+		try {
+			response = this.dispatcher.dispatchAsync(request.slice());
+		} catch (RuntimeException e) {
+			return CompletableFuture.completedFuture(this.reply(id, FAILURE,
+					null));
+		}
+		return response
+				.handle(new BiFunction<ByteBuffer, Throwable, ByteBuffer>() {
+
+					@Override
+					public ByteBuffer apply(ByteBuffer response,
+							Throwable failure) {
+						if (failure != null) {
+							return CorrelatedDispatcher.this.reply(id,
+									FAILURE, null);
+						}
+						if (response == null) {
+							return CorrelatedDispatcher.this.reply(id,
+									NO_RESPONSE, null);
+						}
+						return CorrelatedDispatcher.this.reply(id, RESPONSE,
+								response);
+					}
+
+				});
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * <p>
+	 * This waits for the reply of the asynchronous dispatch.
+	 * </p>
+	 */
+	@Override
+	public ByteBuffer dispatchMessage(ByteBuffer msg) {
+		return this.dispatchAsync(msg).toCompletableFuture().join();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @return {@link #REQUEST_TYPE}
+	 */
+	@Override
+	public int messageType() {
+		return REQUEST_TYPE;
+	}
+
+	private ByteBuffer reply(int id, byte status, ByteBuffer response) {
+		final ByteBuffer reply = ByteBuffer.allocate(REPLY_HEADER
+				+ (response == null ? 0 : response.remaining()));
+		reply.put(REPLY);
+		reply.putInt(id);
+		reply.put(status);
+		if (response != null) {
+			reply.put(response);
+			if (this.pool != null) {
+				this.pool.release(response);
+			}
+		}
+		reply.flip();
+		return reply;
+	}
+
+}
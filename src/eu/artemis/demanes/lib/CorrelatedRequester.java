@@ -0,0 +1,194 @@
+/**
+ * File CorrelatedRequester.java
+ * 
+ * This file is part of the eu.artemis.demanes project.
+ *
+ * Copyright 2014 TNO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.artemis.demanes.lib;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <h1>CorrelatedRequester</h1>
+ * 
+ * <p>
+ * Sends requests over a {@link GatheringSocketConnector} to a
+ * {@link CorrelatedDispatcher} at the peer, without waiting for the reply to
+ * one request before sending the next. Every request is sent with a fresh
+ * correlation identifier, and completes when the reply with that identifier
+ * is dispatched to the requester, which is registered at the connector for
+ * that when it is {@linkplain #create(GatheringSocketConnector) created}.
+ * Only replies are taken; requests of the peer are left to the other
+ * dispatchers of the connector. In a {@link RoutingDispatcherRegistry} the
+ * requester gets the messages of type
+ * {@value CorrelatedDispatcher#REPLY_TYPE}.
+ * </p>
+ * 
+ * <p>
+ * A request whose reply never comes, for instance because the connection
+ * was lost, remains outstanding until it is {@linkplain #cancelAll(Throwable)
+ * cancelled}.
+ * </p>
+ *
+ * @author DEMANES
+ * @version 0.1
+ * @since 18 okt. 2026
+ *
+ */
+public class CorrelatedRequester implements RoutedMessageDispatcher {
+
+	private final GatheringSocketConnector connector;
+
+	private final AtomicInteger ids = new AtomicInteger();
+
+	private final ConcurrentMap<Integer, CompletableFuture<ByteBuffer>> outstanding = new ConcurrentHashMap<Integer, CompletableFuture<ByteBuffer>>();
+
+	/**
+	 * Create a requester, and register it at the connector to receive the
+	 * replies. The requester is only registered once it is fully
+	 * constructed, as replies may be dispatched to it right away.
+	 * 
+	 * @param connector
+	 *            the connector to the peer, which is also the registry of the
+	 *            dispatchers of the replies
+	 * @return the registered requester
+	 */
+	public static <C extends GatheringSocketConnector & MessageDispatcherRegistry> CorrelatedRequester create(
+			C connector) {
+		if (connector == null) {
+			throw new IllegalArgumentException("Connector must be non-null");
+		}
+		final CorrelatedRequester requester = new CorrelatedRequester(
+				connector);
+		connector.addDispatcher(requester);
+		return requester;
+	}
+
+	private CorrelatedRequester(GatheringSocketConnector connector) {
+		this.connector = connector;
+	}
+
+	/**
+	 * Fail all outstanding requests.
+	 * 
+	 * @param cause
+	 *            the reason the requests fail
+	 */
+	public void cancelAll(Throwable cause) {
+		final Iterator<CompletableFuture<ByteBuffer>> it = this.outstanding
+				.values().iterator();
+		while (it.hasNext()) {
+			final CompletableFuture<ByteBuffer> request = it.next();
+			it.remove();
+			request.completeExceptionally(cause);
+		}
+	}
+
+	/**
+	 * Complete the request the reply belongs to. The response in the reply
+	 * is copied, so it does not depend on the buffer of the reply. A message
+	 * which is not a reply is ignored.
+	 * 
+	 * @param msg
+	 *            the reply
+	 * @return null, as there is no response to a reply
+	 */
+	@Override
+	public ByteBuffer dispatchMessage(ByteBuffer msg) {
+		if (msg.remaining() < CorrelatedDispatcher.REPLY_HEADER
+				|| msg.get(msg.position()) != CorrelatedDispatcher.REPLY) {
+			return null;
+		}
+		final int id = msg.getInt(msg.position() + 1);
+		final CompletableFuture<ByteBuffer> request = this.outstanding
+				.remove(id);
+		if (request == null) {
+			return null;
+		}
+		final ByteBuffer reply = msg.duplicate();
+		reply.position(reply.position() + CorrelatedDispatcher.REPLY_HEADER);
+		switch (msg.get(msg.position() + 5)) {
+		case CorrelatedDispatcher.RESPONSE:
+			final ByteBuffer response = ByteBuffer.allocate(reply.remaining());
+			response.put(reply);
+			response.flip();
+			request.complete(response);
+			break;
+		case CorrelatedDispatcher.NO_RESPONSE:
+			request.complete(null);
+			break;
+		default:
+			request.completeExceptionally(new IOException("Request " + id
+					+ " failed at the peer"));
+		}
+		return null;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @return {@link CorrelatedDispatcher#REPLY_TYPE}
+	 */
+	@Override
+	public int messageType() {
+		return CorrelatedDispatcher.REPLY_TYPE;
+	}
+
+	/**
+	 * Get the number of requests sent and not yet answered.
+	 * 
+	 * @return the number of outstanding requests
+	 */
+	public int outstanding() {
+		return this.outstanding.size();
+	}
+
+	/**
+	 * Send a request to the peer. The parts are sent with a gathering write,
+	 * after the correlation identifier.
+	 * 
+	 * @param parts
+	 *            the parts of the request
+	 * @return a stage which completes with the response of the peer, or with
+	 *         null if it has none
+	 */
+	public CompletionStage<ByteBuffer> request(ByteBuffer... parts) {
+		final int id = this.ids.getAndIncrement();
+		final CompletableFuture<ByteBuffer> request;
+		request = new CompletableFuture<ByteBuffer>();
+		this.outstanding.put(id, request);
+		final ByteBuffer[] message = new ByteBuffer[parts.length + 1];
+		message[0] = ByteBuffer.allocate(CorrelatedDispatcher.REQUEST_HEADER);
+		message[0].put(0, CorrelatedDispatcher.REQUEST);
+		message[0].putInt(1, id);
+		System.arraycopy(parts, 0, message, 1, parts.length);
+		try {
+			this.connector.write(message);
+		} catch (RuntimeException e) {
+			this.outstanding.remove(id);
+			request.completeExceptionally(e);
+		}
+		return request;
+	}
+
+}
@@ -0,0 +1,159 @@
+/**
+ * File DispatchExecutors.java
+ * 
+ * This file is part of the eu.artemis.demanes project.
+ *
+ * Copyright 2014 TNO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.artemis.demanes.lib;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * <h1>DispatchExecutors</h1>
+ * 
+ * <p>
+ * Creates the executors that messages are dispatched on, and through them
+ * the services they address are invoked. Two modes are supported:
+ * </p>
+ * <ul>
+ * <li>{@value #PLATFORM}: a fixed pool with a thread per processor. A
+ * dispatcher blocking on device I/O holds one of these threads.</li>
+ * <li>{@value #VIRTUAL}: a new virtual thread per task, so blocked dispatches
+ * hold no thread of the operating system. Virtual threads are created
+ * through reflection, so this class also loads on runtimes without them,
+ * which fall back to a new platform thread per task.</li>
+ * </ul>
+ * 
+ * <p>
+ * The mode is configured with the system property {@value #MODE_PROPERTY},
+ * and is {@value #PLATFORM} if it is not set. As the virtual mode does not
+ * bound the number of concurrent dispatches, it is meant to be combined with
+ * a {@link eu.artemis.demanes.lib.services.ServiceLimiter} in front of the
+ * services. Buffers leased and released on virtual threads bypass the
+ * per-thread caches of the {@link BufferPool}, which would die with their
+ * thread, and go through its shared queues.
+ * </p>
+ *
+ * @author DEMANES
+ * @version 0.1
+ * @since 18 okt. 2026
+ *
+ */
+public final class DispatchExecutors {
+
+	/**
+	 * The system property which selects the mode.
+	 */
+	public static final String MODE_PROPERTY = "eu.artemis.demanes.lib.dispatch.threads";
+
+	/**
+	 * The mode of a fixed pool of platform threads.
+	 */
+	public static final String PLATFORM = "platform";
+
+	/**
+	 * The mode of a virtual thread per task.
+	 */
+	public static final String VIRTUAL = "virtual";
+
+	private static final Method NEW_VIRTUAL_EXECUTOR = DispatchExecutors
+			.lookupVirtualExecutor();
+
+	/**
+	 * Whether the runtime supports virtual threads.
+	 * 
+	 * @return true if {@link #newVirtualExecutor()} creates virtual threads
+	 */
+	public static boolean isVirtualAvailable() {
+		return NEW_VIRTUAL_EXECUTOR != null;
+	}
+
+	/**
+	 * Create an executor of the configured mode.
+	 * 
+	 * @return a new executor
+	 * @throws IllegalArgumentException
+	 *             if the configured mode is unknown
+	 * @see #MODE_PROPERTY
+	 */
+	public static ExecutorService newExecutor() {
+		return DispatchExecutors.newExecutor(System.getProperty(
+				MODE_PROPERTY, PLATFORM));
+	}
+
+	/**
+	 * Create an executor of the given mode.
+	 * 
+	 * @param mode
+	 *            either {@value #PLATFORM} or {@value #VIRTUAL}
+	 * @return a new executor
+	 * @throws IllegalArgumentException
+	 *             if the mode is unknown
+	 */
+	public static ExecutorService newExecutor(String mode) {
+		if (PLATFORM.equalsIgnoreCase(mode)) {
+			return DispatchExecutors.newPlatformExecutor();
+		}
+		if (VIRTUAL.equalsIgnoreCase(mode)) {
+			return DispatchExecutors.newVirtualExecutor();
+		}
+		throw new IllegalArgumentException("Unknown dispatch mode " + mode);
+	}
+
+	/**
+	 * Create a fixed pool with a platform thread per processor.
+	 * 
+	 * @return a new executor
+	 */
+	public static ExecutorService newPlatformExecutor() {
+		return Executors.newFixedThreadPool(Runtime.getRuntime()
+				.availableProcessors());
+	}
+
+	/**
+	 * Create an executor which starts a virtual thread per task, or a
+	 * platform thread per task if the runtime has no virtual threads.
+	 * 
+	 * @return a new executor
+	 */
+	public static ExecutorService newVirtualExecutor() {
+		if (NEW_VIRTUAL_EXECUTOR == null) {
+			return Executors.newCachedThreadPool();
+		}
+		try {
+			return (ExecutorService) NEW_VIRTUAL_EXECUTOR.invoke(null);
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException(e);
+		} catch (InvocationTargetException e) {
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	private static Method lookupVirtualExecutor() {
+		try {
+			return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+
+	private DispatchExecutors() {
+	}
+
+}
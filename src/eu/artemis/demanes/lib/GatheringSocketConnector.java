@@ -0,0 +1,56 @@
+/**
+ * File GatheringSocketConnector.java
+ * 
+ * This file is part of the eu.artemis.demanes project.
+ *
+ * Copyright 2014 TNO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.artemis.demanes.lib;
+
+import java.nio.ByteBuffer;
+
+/**
+ * GatheringSocketConnector
+ * 
+ * A {@link SocketConnector} which also sends a message made of several
+ * buffers, without copying them into a single array first. This is a
+ * separate interface rather than a new method of SocketConnector, so that
+ * existing connectors remain valid.
+ * 
+ * @author DEMANES
+ * @version 0.1
+ * @since 18 okt. 2026
+ * 
+ */
+public interface GatheringSocketConnector extends SocketConnector {
+
+	/**
+	 * For actively sending a message via the Socket, this function accepts the
+	 * parts of the message, such as a header, a URN dictionary and a payload,
+	 * in separate buffers. The message is the remaining bytes of all buffers,
+	 * in order. They are sent with a gathering write, without copying them
+	 * into a single array first. The positions of the buffers are moved past
+	 * the bytes written, so that a buffer is fully consumed when the call
+	 * returns. Writing a byte array is the same as writing it wrapped in a
+	 * buffer.
+	 * 
+	 * @param vals
+	 *            the parts of the message
+	 * @return 
+	 * @see java.nio.channels.GatheringByteChannel#write(ByteBuffer[])
+	 */
+	public MessageDispatcherRegistry write(ByteBuffer... vals);
+
+}
@@ -0,0 +1,190 @@
+/**
+ * File LoopbackConnector.java
+ * 
+ * This file is part of the eu.artemis.demanes project.
+ *
+ * Copyright 2014 TNO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.artemis.demanes.lib;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.GatheringByteChannel;
+
+/**
+ * <h1>LoopbackConnector</h1>
+ * 
+ * <p>
+ * A {@link GatheringSocketConnector} without a socket, for testing. Every
+ * message written is gathered through a {@link GatheringByteChannel} in memory
+ * and dispatched straight to the {@link MessageDispatcher}s registered at the
+ * connector, which is the registry every write returns. Each dispatcher gets a
+ * read-only view of the message. There is no peer to send responses to, so the
+ * responses of the dispatchers are dropped.
+ * </p>
+ * 
+ * <p>
+ * Messages are dispatched one at a time, in the thread that writes them.
+ * </p>
+ *
+ * @author DEMANES
+ * @version 0.1
+ * @since 18 okt. 2026
+ *
+ */
+public class LoopbackConnector implements GatheringSocketConnector,
+		MessageDispatcherRegistry {
+
+	/**
+	 * Channel which gathers what is written to it into one message.
+	 */
+	private static final class MessageChannel implements GatheringByteChannel {
+
+		private ByteBuffer message = ByteBuffer.allocate(INITIAL_SIZE);
+
+		private boolean open = true;
+
+		@Override
+		public void close() {
+			this.open = false;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return this.open;
+		}
+
+		@Override
+		public int write(ByteBuffer src) throws IOException {
+			return (int) this.write(new ByteBuffer[] { src }, 0, 1);
+		}
+
+		@Override
+		public long write(ByteBuffer[] srcs) throws IOException {
+			return this.write(srcs, 0, srcs.length);
+		}
+
+		@Override
+		public long write(ByteBuffer[] srcs, int offset, int length)
+				throws IOException {
+			if (!this.open) {
+				throw new ClosedChannelException();
+			}
+			long total = 0;
+			for (int i = offset; i < offset + length; i++) {
+				total += srcs[i].remaining();
+			}
+			if (total > this.message.remaining()) {
+				final long needed = this.message.position() + total;
+				if (needed > Integer.MAX_VALUE) {
+					throw new IOException("Message of " + needed
+							+ " bytes is too large");
+				}
+				final ByteBuffer grown = ByteBuffer.allocate((int) Math.max(
+						needed, 2L * this.message.capacity()));
+				this.message.flip();
+				grown.put(this.message);
+				this.message = grown;
+			}
+			for (int i = offset; i < offset + length; i++) {
+				this.message.put(srcs[i]);
+			}
+			return total;
+		}
+
+		/**
+		 * Take the message written so far, and start a new one.
+		 * 
+		 * @return the message
+		 */
+		ByteBuffer take() {
+			final ByteBuffer message = this.message;
+			message.flip();
+			this.message = ByteBuffer.allocate(Math.max(INITIAL_SIZE,
+					message.limit()));
+			return message;
+		}
+
+	}
+
+	private static final int INITIAL_SIZE = 256;
+
+	private final MessageChannel channel = new MessageChannel();
+
+	private final CopyOnWriteDispatcherRegistry dispatchers = new CopyOnWriteDispatcherRegistry();
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void addDispatcher(MessageDispatcher dispatcher) {
+		this.dispatchers.addDispatcher(dispatcher);
+	}
+
+	/**
+	 * Close the connector. Writing to it afterwards fails.
+	 */
+	public void close() {
+		this.channel.close();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean containsDispatcher(MessageDispatcher dispatcher) {
+		return this.dispatchers.containsDispatcher(dispatcher);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void removeDispatcher(MessageDispatcher dispatcher) {
+		this.dispatchers.removeDispatcher(dispatcher);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public MessageDispatcherRegistry write(byte[] val) {
+		return this.write(ByteBuffer.wrap(val));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @throws IllegalStateException
+	 *             if the connector is closed
+	 */
+	@Override
+	public synchronized MessageDispatcherRegistry write(ByteBuffer... vals) {
+		try {
+			this.channel.write(vals);
+		} catch (ClosedChannelException e) {
+			throw new IllegalStateException("Loopback connector is closed", e);
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Cannot write message", e);
+		}
+		final ByteBuffer message = this.channel.take();
+		for (MessageDispatcher dispatcher : this.dispatchers.dispatchers()) {
+			dispatcher.dispatchMessage(message.asReadOnlyBuffer());
+		}
+		return this;
+	}
+
+}
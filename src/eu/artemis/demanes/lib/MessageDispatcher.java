@@ -41,6 +41,9 @@ public interface MessageDispatcher {
 	 * message, the response to the incoming message may be returned. If no
 	 * response is required this function will return null.
 	 * 
+	 * The response may be leased from a {@link BufferPool}, in which case the
+	 * caller releases it to that pool once it has been sent.
+	 * 
 	 * @param msg
 	 *            the received message packed in a buffer of bytes.
 	 * @return the response to this message packed in a buffer of bytes. Null if
@@ -0,0 +1,138 @@
+/**
+ * File ParameterBatch.java
+ * 
+ * This file is part of the eu.artemis.demanes project.
+ *
+ * Copyright 2014 TNO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.artemis.demanes.lib;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import eu.artemis.demanes.datatypes.ANES_URN;
+import eu.artemis.demanes.lib.exceptions.SerializationException;
+
+/**
+ * <h1>ParameterBatch</h1>
+ * 
+ * <p>
+ * Encoding of the parameter values of a batch call of a
+ * {@link BatchParameterizationProxy} in a single array of bytes: a
+ * {@link Varint} count followed by every parameter, which is its URN written
+ * by a {@link URNSerializer}, a {@link Varint} of the length of its value
+ * plus one, and the bytes of the value. A length of zero stands for a null
+ * value.
+ * </p>
+ *
+ * @author DEMANES
+ * @version 0.1
+ * @since 18 okt. 2026
+ *
+ */
+public final class ParameterBatch {
+
+	private ParameterBatch() {
+	}
+
+	/**
+	 * Deserialize the parameter values of a batch.
+	 * 
+	 * @param urns
+	 *            the serializer of the URNs
+	 * @param b
+	 *            the bytes to deserialize
+	 * @return the values keyed by the URNs of the parameters, in the order
+	 *         they were serialized
+	 * @throws SerializationException
+	 *             if the bytes do not hold a batch
+	 */
+	public static Map<ANES_URN, byte[]> deserialize(URNSerializer urns,
+			byte[] b) throws SerializationException {
+		final ByteBuffer buf = ByteBuffer.wrap(b);
+		try {
+			final int count = Varint.read(buf);
+			final Map<ANES_URN, byte[]> values = new LinkedHashMap<ANES_URN, byte[]>(
+					2 * Math.min(count, b.length));
+			for (int i = 0; i < count; i++) {
+				final ANES_URN urn = urns.read(buf);
+				final int length = Varint.read(buf) - 1;
+				if (length < 0) {
+					values.put(urn, null);
+				} else if (length > buf.remaining()) {
+					throw new SerializationException("Value of " + length
+							+ " bytes exceeds the " + buf.remaining()
+							+ " bytes remaining");
+				} else {
+					final byte[] value = new byte[length];
+					buf.get(value);
+					values.put(urn, value);
+				}
+			}
+			if (buf.hasRemaining()) {
+				throw new SerializationException(buf.remaining()
+						+ " trailing bytes after parameters");
+			}
+			return values;
+		} catch (BufferUnderflowException e) {
+			throw new SerializationException("Truncated parameter batch", e);
+		} catch (IllegalArgumentException e) {
+			throw new SerializationException("Invalid parameter batch", e);
+		}
+	}
+
+	/**
+	 * Serialize the parameter values of a batch.
+	 * 
+	 * @param urns
+	 *            the serializer of the URNs
+	 * @param values
+	 *            the values keyed by the URNs of the parameters; values may be
+	 *            null
+	 * @return the bytes representing the batch
+	 * @throws SerializationException
+	 *             if a URN can not be serialized
+	 */
+	public static byte[] serialize(URNSerializer urns,
+			Map<ANES_URN, byte[]> values) throws SerializationException {
+		int size = Varint.size(values.size());
+		for (Map.Entry<ANES_URN, byte[]> entry : values.entrySet()) {
+			final int length = entry.getValue() == null ? 0
+					: entry.getValue().length + 1;
+			size += urns.maxSize(entry.getKey()) + Varint.size(length)
+					+ Math.max(length - 1, 0);
+		}
+		final ByteBuffer buf = ByteBuffer.allocate(size);
+		Varint.write(buf, values.size());
+		for (Map.Entry<ANES_URN, byte[]> entry : values.entrySet()) {
+			urns.write(buf, entry.getKey());
+			final byte[] value = entry.getValue();
+			if (value == null) {
+				Varint.write(buf, 0);
+			} else {
+				Varint.write(buf, value.length + 1);
+				buf.put(value);
+			}
+		}
+		if (buf.hasRemaining()) {
+			return Arrays.copyOf(buf.array(), buf.position());
+		}
+		return buf.array();
+	}
+
+}
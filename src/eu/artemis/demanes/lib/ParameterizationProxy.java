@@ -60,6 +60,9 @@ public interface ParameterizationProxy {
 	 * - parameters that can be retrieved or modified, or ; - setters and
 	 * getters functions that can be invoked to retrieve or modify parameters.
 	 * 
+	 * A compact encoding for the identifiers is provided by
+	 * {@link URNSerializer#serializeAll(java.util.Collection)}.
+	 * 
 	 * @return a byte array of identifiers.
 	 * @throws ParameterizationException
 	 */
@@ -0,0 +1,47 @@
+/**
+ * File RoutedMessageDispatcher.java
+ * 
+ * This file is part of the eu.artemis.demanes project.
+ *
+ * Copyright 2014 TNO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.artemis.demanes.lib;
+
+/**
+ * <h1>RoutedMessageDispatcher</h1>
+ * 
+ * <p>
+ * A {@link MessageDispatcher} for the messages of a single type. The type of a
+ * message is its first byte, so that a {@link RoutingDispatcherRegistry} can
+ * hand every message to the one dispatcher of its type without offering it to
+ * any other.
+ * </p>
+ *
+ * @author DEMANES
+ * @version 0.1
+ * @since 18 okt. 2026
+ *
+ */
+public interface RoutedMessageDispatcher extends MessageDispatcher {
+
+	/**
+	 * Get the type of the messages this dispatcher handles. This must always
+	 * return the same type.
+	 * 
+	 * @return the type, from 0 to 255
+	 */
+	public int messageType();
+
+}
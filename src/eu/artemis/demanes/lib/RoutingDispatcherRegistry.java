@@ -0,0 +1,154 @@
+/**
+ * File RoutingDispatcherRegistry.java
+ * 
+ * This file is part of the eu.artemis.demanes project.
+ *
+ * Copyright 2014 TNO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.artemis.demanes.lib;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * <h1>RoutingDispatcherRegistry</h1>
+ * 
+ * <p>
+ * A {@link MessageDispatcherRegistry} which routes every message to exactly
+ * one dispatcher, by the type in its first byte. The dispatchers are kept in
+ * a table indexed by type, so routing takes constant time however many
+ * dispatchers there are. Every {@link RoutedMessageDispatcher} gets the
+ * messages of its {@linkplain RoutedMessageDispatcher#messageType() type};
+ * at most one plain dispatcher may be added, which gets the messages of the
+ * types without a dispatcher, and empty messages. The dispatchers get the
+ * whole message, including its type.
+ * </p>
+ * 
+ * <p>
+ * The table is updated with atomic compare-and-set operations, so neither
+ * routing nor registration takes a lock, and routing is never held up by a
+ * registration.
+ * </p>
+ *
+ * @author DEMANES
+ * @version 0.1
+ * @since 18 okt. 2026
+ *
+ */
+public class RoutingDispatcherRegistry implements MessageDispatcherRegistry,
+		MessageDispatcher {
+
+	private static final int TYPES = 256;
+
+	private static int type(MessageDispatcher dispatcher) {
+		final int type = ((RoutedMessageDispatcher) dispatcher).messageType();
+		if (type < 0 || type >= TYPES) {
+			throw new IllegalArgumentException("Invalid message type " + type
+					+ " of " + dispatcher);
+		}
+		return type;
+	}
+
+	private final AtomicReference<MessageDispatcher> fallback = new AtomicReference<MessageDispatcher>();
+
+	private final AtomicReferenceArray<MessageDispatcher> routes = new AtomicReferenceArray<MessageDispatcher>(
+			TYPES);
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the type of the dispatcher is invalid or already has
+	 *             another dispatcher, or if the dispatcher is a plain one and
+	 *             there already is another plain dispatcher
+	 */
+	@Override
+	public void addDispatcher(MessageDispatcher dispatcher) {
+		if (dispatcher == null) {
+			throw new IllegalArgumentException("Dispatcher must be non-null");
+		}
+		final MessageDispatcher current;
+		if (dispatcher instanceof RoutedMessageDispatcher) {
+			final int type = RoutingDispatcherRegistry.type(dispatcher);
+			if (this.routes.compareAndSet(type, null, dispatcher)) {
+				return;
+			}
+			current = this.routes.get(type);
+		} else {
+			if (this.fallback.compareAndSet(null, dispatcher)) {
+				return;
+			}
+			current = this.fallback.get();
+		}
+		if (current != dispatcher) {
+			throw new IllegalArgumentException("Cannot add " + dispatcher
+					+ ", its messages already go to " + current);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean containsDispatcher(MessageDispatcher dispatcher) {
+		if (dispatcher instanceof RoutedMessageDispatcher) {
+			final int type = ((RoutedMessageDispatcher) dispatcher)
+					.messageType();
+			return type >= 0 && type < TYPES
+					&& this.routes.get(type) == dispatcher;
+		}
+		return dispatcher != null && this.fallback.get() == dispatcher;
+	}
+
+	/**
+	 * Route the message to the dispatcher of its type.
+	 * 
+	 * @param msg
+	 *            the message, whose first byte is its type
+	 * @return the response of the dispatcher, or null if there is none
+	 */
+	@Override
+	public ByteBuffer dispatchMessage(ByteBuffer msg) {
+		MessageDispatcher dispatcher = null;
+		if (msg.hasRemaining()) {
+			dispatcher = this.routes.get(msg.get(msg.position()) & 0xFF);
+		}
+		if (dispatcher == null) {
+			dispatcher = this.fallback.get();
+			if (dispatcher == null) {
+				return null;
+			}
+		}
+		return dispatcher.dispatchMessage(msg);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void removeDispatcher(MessageDispatcher dispatcher) {
+		if (dispatcher instanceof RoutedMessageDispatcher) {
+			final int type = ((RoutedMessageDispatcher) dispatcher)
+					.messageType();
+			if (type >= 0 && type < TYPES) {
+				this.routes.compareAndSet(type, dispatcher, null);
+			}
+		} else if (dispatcher != null) {
+			this.fallback.compareAndSet(dispatcher, null);
+		}
+	}
+
+}
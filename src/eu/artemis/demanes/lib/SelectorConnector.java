@@ -0,0 +1,690 @@
+/**
+ * File SelectorConnector.java
+ * 
+ * This file is part of the eu.artemis.demanes project.
+ *
+ * Copyright 2014 TNO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.artemis.demanes.lib;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BiConsumer;
+
+import eu.artemis.demanes.exceptions.SocketConnectException;
+
+/**
+ * <h1>SelectorConnector</h1>
+ * 
+ * <p>
+ * A {@link GatheringSocketConnector} on non-blocking socket channels, all
+ * served by a single {@link Selector} in one event loop thread, so that one
+ * node can serve many peers. The connector may {@linkplain #bind(SocketAddress)
+ * accept} connections of peers, and {@linkplain #connect(SocketAddress)
+ * connect} to one peer, which is where {@link #write(ByteBuffer...)} sends its
+ * messages.
+ * </p>
+ * 
+ * <p>
+ * On every connection, messages are framed by their length as a big-endian
+ * int. The event loop reads a message into a buffer of the
+ * {@link BufferPool} of the connector, and hands it to the
+ * {@link MessageDispatcher}s registered at the connector on a worker pool.
+ * The dispatchers are tried in turn until one gives a non-null response,
+ * which is sent back on the connection the message came from. Responses
+ * leased from the {@link #pool()} of the connector are released once they are
+ * sent; other responses are copied if they cannot be sent at once. Messages
+ * of one connection may be dispatched concurrently. An
+ * {@link AsyncMessageDispatcher} is dispatched to asynchronously, and the
+ * next dispatcher is only tried when its stage completes without a response;
+ * the message is released only after that.
+ * </p>
+ * 
+ * <p>
+ * Messages are written straight to the channel by the thread sending them,
+ * without blocking. Only what the socket does not take at once is queued,
+ * and written by the event loop when the socket is ready for it.
+ * </p>
+ *
+ * @author DEMANES
+ * @version 0.1
+ * @since 18 okt. 2026
+ *
+ */
+public class SelectorConnector implements GatheringSocketConnector,
+		MessageDispatcherRegistry {
+
+	/**
+	 * A connection with a peer.
+	 */
+	private final class Connection {
+
+		private ByteBuffer body;
+
+		private final SocketChannel channel;
+
+		private final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+
+		private SelectionKey key;
+
+		private final Queue<ByteBuffer[]> pending = new ArrayDeque<ByteBuffer[]>();
+
+		Connection(SocketChannel channel) {
+			this.channel = channel;
+		}
+
+		/**
+		 * Close the connection, and release its buffers. Called by the event
+		 * loop only.
+		 */
+		void close() {
+			if (this.key != null) {
+				this.key.cancel();
+			}
+			try {
+				this.channel.close();
+			} catch (IOException e) {
+				// Nothing left to do with the connection
+			}
+			if (this.body != null) {
+				SelectorConnector.this.pool.release(this.body);
+				this.body = null;
+			}
+			synchronized (this) {
+				for (ByteBuffer[] parts : this.pending) {
+					SelectorConnector.this.release(parts);
+				}
+				this.pending.clear();
+			}
+		}
+
+		/**
+		 * Write queued messages, now that the socket is ready for it. Called
+		 * by the event loop only.
+		 * 
+		 * @throws IOException
+		 */
+		synchronized void flush() throws IOException {
+			while (!this.pending.isEmpty()) {
+				final ByteBuffer[] parts = this.pending.peek();
+				if (!SelectorConnector.write(this.channel, parts)) {
+					return;
+				}
+				SelectorConnector.this.release(this.pending.poll());
+			}
+			this.key.interestOps(SelectionKey.OP_READ);
+		}
+
+		/**
+		 * Read the messages available on the socket. Called by the event loop
+		 * only.
+		 * 
+		 * @throws IOException
+		 */
+		void read() throws IOException {
+			for (int frames = 0; frames < MAX_FRAMES_PER_READ; frames++) {
+				if (this.body == null) {
+					if (this.channel.read(this.header) < 0) {
+						throw new ClosedChannelException();
+					}
+					if (this.header.hasRemaining()) {
+						return;
+					}
+					final int length = this.header.getInt(0);
+					this.header.clear();
+					if (length < 0
+							|| length > SelectorConnector.this.maxMessageSize) {
+						throw new IOException("Invalid message length "
+								+ length);
+					}
+					this.body = SelectorConnector.this.pool.lease(length);
+				}
+				if (this.channel.read(this.body) < 0) {
+					throw new ClosedChannelException();
+				}
+				if (this.body.hasRemaining()) {
+					return;
+				}
+				final ByteBuffer message = this.body;
+				this.body = null;
+				message.flip();
+				SelectorConnector.this.dispatch(this, message);
+			}
+		}
+
+		/**
+		 * Send a message on the connection. It is written right away as far
+		 * as the socket takes it, and queued otherwise.
+		 * 
+		 * @param parts
+		 *            the header and the parts of the message
+		 * @param owned
+		 *            whether the parts may be queued as they are and released
+		 *            when written; otherwise what is left of them is copied
+		 * @throws IOException
+		 */
+		synchronized void send(ByteBuffer[] parts, boolean owned)
+				throws IOException {
+			if (!this.channel.isOpen()) {
+				throw new ClosedChannelException();
+			}
+			if (this.pending.isEmpty()
+					&& SelectorConnector.write(this.channel, parts)) {
+				if (owned) {
+					SelectorConnector.this.release(parts);
+				}
+				return;
+			}
+			final ByteBuffer[] queued;
+			if (owned) {
+				queued = parts;
+			} else {
+				long remaining = 0;
+				for (ByteBuffer part : parts) {
+					remaining += part.remaining();
+				}
+				final ByteBuffer copy = SelectorConnector.this.pool
+						.lease((int) remaining);
+				for (ByteBuffer part : parts) {
+					copy.put(part);
+				}
+				copy.flip();
+				queued = new ByteBuffer[] { copy };
+			}
+			this.pending.add(queued);
+			if (this.pending.size() == 1) {
+				SelectorConnector.this.execute(new Runnable() {
+
+					@Override
+					public void run() {
+						final SelectionKey key = Connection.this.key;
+						if (key != null && key.isValid()) {
+							key.interestOps(SelectionKey.OP_READ
+									| SelectionKey.OP_WRITE);
+						}
+					}
+
+				});
+			}
+		}
+
+	}
+
+	/**
+	 * Default maximum size of a message, in bytes.
+	 */
+	public static final int DEFAULT_MAX_MESSAGE_SIZE = 16 * 1024 * 1024;
+
+	private static final int HEADER_SIZE = 4;
+
+	private static final int MAX_FRAMES_PER_READ = 16;
+
+	/**
+	 * Write as much of the parts as the channel takes.
+	 * 
+	 * @return true if all parts were written
+	 */
+	private static boolean write(SocketChannel channel, ByteBuffer[] parts)
+			throws IOException {
+		while (parts[parts.length - 1].hasRemaining()
+				|| SelectorConnector.hasRemaining(parts)) {
+			if (channel.write(parts) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean hasRemaining(ByteBuffer[] parts) {
+		for (ByteBuffer part : parts) {
+			if (part.hasRemaining()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private final CopyOnWriteDispatcherRegistry dispatchers = new CopyOnWriteDispatcherRegistry();
+
+	private final Thread loop;
+
+	private final int maxMessageSize;
+
+	private final boolean ownsWorkers;
+
+	private volatile Connection peer;
+
+	private final BufferPool pool;
+
+	private final Selector selector;
+
+	private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+
+	private final ExecutorService workers;
+
+	/**
+	 * Create a connector with workers and a pool of its own. The workers are
+	 * of the mode configured for {@link DispatchExecutors}: a thread per
+	 * processor, or a virtual thread per message.
+	 * 
+	 * @throws IOException
+	 *             if the selector can't be opened
+	 * @throws IllegalArgumentException
+	 *             if the configured mode is unknown
+	 */
+	public SelectorConnector() throws IOException {
+		this(DispatchExecutors.newExecutor(), new BufferPool(),
+				DEFAULT_MAX_MESSAGE_SIZE, true);
+	}
+
+	/**
+	 * Create a connector which dispatches on the given workers. The workers
+	 * are not shut down when the connector is closed.
+	 * 
+	 * @param workers
+	 *            the pool of threads to dispatch messages on
+	 * @param pool
+	 *            the pool of the buffers of messages
+	 * @param maxMessageSize
+	 *            the largest message accepted from a peer; a peer sending a
+	 *            larger one is disconnected
+	 * @throws IOException
+	 *             if the selector can't be opened
+	 */
+	public SelectorConnector(ExecutorService workers, BufferPool pool,
+			int maxMessageSize) throws IOException {
+		this(workers, pool, maxMessageSize, false);
+	}
+
+	private SelectorConnector(ExecutorService workers, BufferPool pool,
+			int maxMessageSize, boolean ownsWorkers) throws IOException {
+		if (workers == null || pool == null || maxMessageSize < 0) {
+			throw new IllegalArgumentException(
+					"Workers, a pool and a maximum message size are required");
+		}
+		this.workers = workers;
+		this.pool = pool;
+		this.maxMessageSize = maxMessageSize;
+		this.ownsWorkers = ownsWorkers;
+		this.selector = Selector.open();
+		this.loop = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				SelectorConnector.this.run();
+			}
+
+		}, "SelectorConnector");
+		this.loop.setDaemon(true);
+		this.loop.start();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void addDispatcher(MessageDispatcher dispatcher) {
+		this.dispatchers.addDispatcher(dispatcher);
+	}
+
+	/**
+	 * Accept connections of peers on the given address.
+	 * 
+	 * @param address
+	 *            the local address to listen on
+	 * @throws SocketConnectException
+	 *             if the address can't be bound
+	 */
+	public void bind(SocketAddress address) throws SocketConnectException {
+		final ServerSocketChannel server;
+		try {
+			server = ServerSocketChannel.open();
+			server.configureBlocking(false);
+			server.socket().bind(address);
+		} catch (IOException e) {
+			throw new SocketConnectException("Cannot bind " + address, e);
+		}
+		this.execute(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					server.register(SelectorConnector.this.selector,
+							SelectionKey.OP_ACCEPT);
+				} catch (ClosedChannelException e) {
+					// The connector was closed in the meantime
+				}
+			}
+
+		});
+	}
+
+	/**
+	 * Close the connector, with all its connections.
+	 */
+	public void close() {
+		this.execute(new Runnable() {
+
+			@Override
+			public void run() {
+				final Selector selector = SelectorConnector.this.selector;
+				for (SelectionKey key : selector.keys()) {
+					if (key.attachment() instanceof Connection) {
+						((Connection) key.attachment()).close();
+					} else {
+						try {
+							key.channel().close();
+						} catch (IOException e) {
+							// Nothing left to do with the channel
+						}
+					}
+				}
+				try {
+					selector.close();
+				} catch (IOException e) {
+					// Nothing left to do with the selector
+				}
+			}
+
+		});
+		if (this.ownsWorkers) {
+			this.workers.shutdown();
+		}
+	}
+
+	/**
+	 * Connect to the peer that {@link #write(ByteBuffer...)} sends messages
+	 * to. The responses of the peer are dispatched like any message.
+	 * 
+	 * @param address
+	 *            the address of the peer
+	 * @throws SocketConnectException
+	 *             if there already is a peer, or the connection fails
+	 */
+	public synchronized void connect(SocketAddress address)
+			throws SocketConnectException {
+		if (this.peer != null && this.peer.channel.isOpen()) {
+			throw new SocketConnectException("Already connected to "
+					+ this.peer.channel.socket().getRemoteSocketAddress());
+		}
+		final SocketChannel channel;
+		try {
+			channel = SocketChannel.open(address);
+			channel.configureBlocking(false);
+		} catch (IOException e) {
+			throw new SocketConnectException("Cannot connect to " + address, e);
+		}
+		final Connection connection = new Connection(channel);
+		this.register(connection);
+		this.peer = connection;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean containsDispatcher(MessageDispatcher dispatcher) {
+		return this.dispatchers.containsDispatcher(dispatcher);
+	}
+
+	/**
+	 * Get the pool of the buffers of messages, from which dispatchers may
+	 * lease their responses.
+	 * 
+	 * @return the pool
+	 */
+	public BufferPool pool() {
+		return this.pool;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void removeDispatcher(MessageDispatcher dispatcher) {
+		this.dispatchers.removeDispatcher(dispatcher);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public MessageDispatcherRegistry write(byte[] val) {
+		return this.write(ByteBuffer.wrap(val));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * <p>
+	 * The message is sent to the peer the connector is
+	 * {@linkplain #connect(SocketAddress) connected} to. What the socket does
+	 * not take at once is copied into a buffer of the pool, so the buffers
+	 * may be reused as soon as the call returns.
+	 * </p>
+	 * 
+	 * @throws IllegalStateException
+	 *             if the connector is not connected
+	 */
+	@Override
+	public MessageDispatcherRegistry write(ByteBuffer... vals) {
+		final Connection peer = this.peer;
+		if (peer == null) {
+			throw new IllegalStateException("Not connected");
+		}
+		final ByteBuffer[] parts = new ByteBuffer[vals.length + 1];
+		long length = 0;
+		for (int i = 0; i < vals.length; i++) {
+			parts[i + 1] = vals[i];
+			length += vals[i].remaining();
+		}
+		if (length > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Message of " + length
+					+ " bytes is too large");
+		}
+		parts[0] = SelectorConnector.header((int) length);
+		try {
+			peer.send(parts, false);
+		} catch (IOException e) {
+			throw new IllegalStateException("Cannot write to peer", e);
+		}
+		return this;
+	}
+
+	private static ByteBuffer header(int length) {
+		final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.putInt(0, length);
+		return header;
+	}
+
+	private void accept(SelectionKey key) throws IOException {
+		final SocketChannel channel = ((ServerSocketChannel) key.channel())
+				.accept();
+		if (channel != null) {
+			channel.configureBlocking(false);
+			this.register(new Connection(channel));
+		}
+	}
+
+	private void dispatch(final Connection connection,
+			final ByteBuffer message) {
+		try {
+			this.workers.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					SelectorConnector.this.respond(connection, message);
+				}
+
+			});
+		} catch (RejectedExecutionException e) {
+			this.pool.release(message);
+		}
+	}
+
+	private void execute(Runnable task) {
+		this.tasks.add(task);
+		this.selector.wakeup();
+	}
+
+	private void register(final Connection connection) {
+		this.execute(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					connection.key = connection.channel.register(
+							SelectorConnector.this.selector,
+							SelectionKey.OP_READ, connection);
+				} catch (ClosedChannelException e) {
+					connection.close();
+				}
+			}
+
+		});
+	}
+
+	private void release(ByteBuffer[] parts) {
+		for (ByteBuffer part : parts) {
+			this.pool.release(part);
+		}
+	}
+
+	private void reply(Connection connection, ByteBuffer response) {
+		// Only what the pool leased is handed over, anything else (such as a
+		// view of the message) is copied if it has to wait
+		final boolean owned = this.pool.isLeased(response);
+		try {
+			connection.send(new ByteBuffer[] {
+					SelectorConnector.header(response.remaining()), response },
+					owned);
+		} catch (IOException e) {
+			if (owned) {
+				this.pool.release(response);
+			}
+		}
+	}
+
+	private void respond(Connection connection, ByteBuffer message) {
+		this.respond(connection, message, this.dispatchers.dispatchers(), 0);
+	}
+
+	private void respond(final Connection connection,
+			final ByteBuffer message, final MessageDispatcher[] dispatchers,
+			int from) {
+		// The message is released once a dispatcher answered it or all of
+		// them passed, which for asynchronous dispatchers may be after this
+		// returns
+		for (int i = from; i < dispatchers.length; i++) {
+			if (dispatchers[i] instanceof AsyncMessageDispatcher) {
+				final CompletionStage<ByteBuffer> stage;
+				try {
+					stage = ((AsyncMessageDispatcher) dispatchers[i])
+							.dispatchAsync(message.asReadOnlyBuffer());
+				} catch (RuntimeException e) {
+					continue;
+				}
+				final int next = i + 1;
+				stage.whenComplete(new BiConsumer<ByteBuffer, Throwable>() {
+
+					@Override
+					public void accept(ByteBuffer response, Throwable failure) {
+						if (response == null) {
+							SelectorConnector.this.respond(connection, message,
+									dispatchers, next);
+							return;
+						}
+						SelectorConnector.this.reply(connection, response);
+						SelectorConnector.this.pool.release(message);
+					}
+
+				});
+				return;
+			}
+			final ByteBuffer response;
+			try {
+				response = dispatchers[i].dispatchMessage(message
+						.asReadOnlyBuffer());
+			} catch (RuntimeException e) {
+				// A failing dispatcher does not answer
+				continue;
+			}
+			if (response != null) {
+				this.reply(connection, response);
+				break;
+			}
+		}
+		this.pool.release(message);
+	}
+
+	private void run() {
+		while (this.selector.isOpen()) {
+			try {
+				this.selector.select();
+			} catch (IOException e) {
+				break;
+			}
+			Runnable task;
+			while ((task = this.tasks.poll()) != null) {
+				task.run();
+			}
+			if (!this.selector.isOpen()) {
+				break;
+			}
+			final Iterator<SelectionKey> keys = this.selector.selectedKeys()
+					.iterator();
+			while (keys.hasNext()) {
+				final SelectionKey key = keys.next();
+				keys.remove();
+				if (!key.isValid()) {
+					continue;
+				}
+				if (key.isAcceptable()) {
+					try {
+						this.accept(key);
+					} catch (IOException e) {
+						// The peer is gone before it was accepted
+					}
+					continue;
+				}
+				final Connection connection = (Connection) key.attachment();
+				try {
+					if (key.isReadable()) {
+						connection.read();
+					}
+					if (key.isValid() && key.isWritable()) {
+						connection.flush();
+					}
+				} catch (IOException e) {
+					connection.close();
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,120 @@
+/**
+ * File SerializerAdapter.java
+ * 
+ * This file is part of the eu.artemis.demanes project.
+ *
+ * Copyright 2014 TNO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.artemis.demanes.lib;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+import eu.artemis.demanes.lib.exceptions.SerializationException;
+
+/**
+ * <h1>SerializerAdapter</h1>
+ * 
+ * <p>
+ * Default {@link BufferSerializer} on top of a plain {@link Serializer}. The
+ * buffer methods copy between the buffer and the arrays of the serializer,
+ * except when a heap buffer covers its whole backing array, which is then
+ * deserialized directly. Since a plain serializer does not tell where an
+ * object ends, {@link #deserialize(ByteBuffer)} reads all remaining bytes.
+ * </p>
+ *
+ * @author DEMANES
+ * @version 0.1
+ * @since 18 okt. 2026
+ *
+ */
+public class SerializerAdapter implements BufferSerializer {
+
+	private final Serializer serializer;
+
+	/**
+	 * Get the serializer as a BufferSerializer, adapting it only if it is not
+	 * one already.
+	 * 
+	 * @param serializer
+	 *            the serializer
+	 * @return the serializer itself, or an adapter of it
+	 */
+	public static BufferSerializer adapt(Serializer serializer) {
+		if (serializer instanceof BufferSerializer) {
+			return (BufferSerializer) serializer;
+		}
+		return new SerializerAdapter(serializer);
+	}
+
+	/**
+	 * @param serializer
+	 *            the serializer to adapt
+	 */
+	public SerializerAdapter(Serializer serializer) {
+		if (serializer == null) {
+			throw new IllegalArgumentException("A serializer is required");
+		}
+		this.serializer = serializer;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Object deserialize(byte[] b) throws SerializationException {
+		return this.serializer.deserialize(b);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Object deserialize(ByteBuffer buf) throws SerializationException {
+		final byte[] b;
+		if (buf.hasArray() && buf.arrayOffset() == 0 && buf.position() == 0
+				&& buf.limit() == buf.array().length) {
+			b = buf.array();
+		} else {
+			b = new byte[buf.remaining()];
+			buf.duplicate().get(b);
+		}
+		final Object obj = this.serializer.deserialize(b);
+		buf.position(buf.limit());
+		return obj;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public byte[] serialize(Object obj) throws SerializationException {
+		return this.serializer.serialize(obj);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void serialize(Object obj, ByteBuffer buf)
+			throws SerializationException {
+		final byte[] b = this.serializer.serialize(obj);
+		if (b.length > buf.remaining()) {
+			throw new BufferOverflowException();
+		}
+		buf.put(b);
+	}
+
+}
@@ -33,12 +33,9 @@ public interface SocketConnector {
 	 * For actively sending message via the Socket, this function accepts a byte
 	 * array which will be sent through the socket
 	 * 
-	 * FIXME: Should this not be a ByteBuffer to be more consistent and more
-	 * memory safe? Making only the change to byte array when really pushing in
-	 * the connection?
-	 * 
 	 * @param val
 	 * @return 
+	 * @see GatheringSocketConnector#write(java.nio.ByteBuffer...)
 	 */
 	public MessageDispatcherRegistry write(byte[] val);
 
@@ -0,0 +1,410 @@
+/**
+ * File URNSerializer.java
+ * 
+ * This file is part of the eu.artemis.demanes project.
+ *
+ * Copyright 2014 TNO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.artemis.demanes.lib;
+
+import java.net.URISyntaxException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import eu.artemis.demanes.datatypes.ANES_URN;
+import eu.artemis.demanes.lib.exceptions.SerializationException;
+import eu.artemis.demanes.lib.services.SessionURNDictionary;
+import eu.artemis.demanes.lib.services.URNDictionary;
+import eu.artemis.demanes.lib.services.URNTranslator;
+
+/**
+ * <h1>URNSerializer</h1>
+ * 
+ * <p>
+ * Compact binary encoding of {@link ANES_URN}s, for use on constrained links
+ * where default Java serialization of an identifier costs hundreds of bytes.
+ * </p>
+ * 
+ * <p>
+ * Every URN starts with a {@link Varint} header. If its lowest bit is set, the
+ * remaining bits are a reference into the dictionary this serializer was
+ * created with, and no text follows. Otherwise the header shifted right by two
+ * gives the length of the UTF-8 text of the URN, which follows the header. If
+ * the second bit of the header is set, the URN is also a definition: a
+ * {@link Varint} with its identifier precedes the text, and the receiver adds
+ * it to its dictionary of the session. A URN is only written as a reference
+ * if the dictionary knows it.
+ * </p>
+ * 
+ * <p>
+ * A serializer created with a {@link URNTranslator} uses that one table for
+ * both ends. A serializer created with the pair of
+ * {@link SessionURNDictionary SessionURNDictionaries} of a session defines
+ * every URN it writes for the first time, and learns the definitions it reads,
+ * so that the peers negotiate the dictionary as they go. Such a serializer
+ * belongs to its session and must see the messages of it in order.
+ * </p>
+ * 
+ * <p>
+ * Decoded URNs are {@linkplain ANES_URN#intern() interned}, so that repeated
+ * identifiers in incoming messages share one instance.
+ * </p>
+ *
+ * @author DEMANES
+ * @version 0.1
+ * @since 18 okt. 2026
+ *
+ */
+public class URNSerializer implements BufferSerializer {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final int REFERENCE = 1;
+
+	private static final int DEFINITION = 2;
+
+	private final URNTranslator outbound;
+
+	private final URNTranslator inbound;
+
+	private final SessionURNDictionary session;
+
+	/**
+	 * Create a serializer which always writes the full text of URNs.
+	 */
+	public URNSerializer() {
+		this(null);
+	}
+
+	/**
+	 * Create a serializer which writes a reference for every URN known to the
+	 * dictionary. The receiving end must use the same dictionary.
+	 * 
+	 * @param dictionary
+	 *            the dictionary of URNs, or null to always write the full text
+	 */
+	public URNSerializer(URNTranslator dictionary) {
+		this.outbound = dictionary;
+		this.inbound = dictionary;
+		this.session = null;
+	}
+
+	/**
+	 * Create a serializer for a session, which negotiates the identifiers of
+	 * URNs with the peer.
+	 * 
+	 * @param outbound
+	 *            the dictionary of the URNs sent to the peer
+	 * @param inbound
+	 *            the dictionary of the URNs received from the peer
+	 */
+	public URNSerializer(SessionURNDictionary outbound,
+			SessionURNDictionary inbound) {
+		if (outbound == null || inbound == null) {
+			throw new IllegalArgumentException(
+					"A session needs both dictionaries");
+		}
+		this.outbound = outbound;
+		this.inbound = inbound;
+		this.session = outbound;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Object deserialize(byte[] b) throws SerializationException {
+		final ByteBuffer buf = ByteBuffer.wrap(b);
+		final ANES_URN urn = this.read(buf);
+		if (buf.hasRemaining()) {
+			throw new SerializationException(buf.remaining()
+					+ " trailing bytes after URN");
+		}
+		return urn;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Object deserialize(ByteBuffer buf) throws SerializationException {
+		return this.read(buf);
+	}
+
+	/**
+	 * Deserializes an array of bytes written by
+	 * {@link #serializeAll(Collection)}.
+	 * 
+	 * @param b
+	 *            the bytes to deserialize
+	 * @return the set of URNs represented by the byte array, in the order
+	 *         they were serialized
+	 * @throws SerializationException
+	 */
+	public Set<ANES_URN> deserializeAll(byte[] b)
+			throws SerializationException {
+		final ByteBuffer buf = ByteBuffer.wrap(b);
+		final int count;
+		try {
+			count = Varint.read(buf);
+		} catch (BufferUnderflowException e) {
+			throw new SerializationException("Truncated URN count", e);
+		} catch (IllegalArgumentException e) {
+			throw new SerializationException("Invalid URN count", e);
+		}
+		final Set<ANES_URN> urns = new LinkedHashSet<ANES_URN>();
+		for (int i = 0; i < count; i++) {
+			urns.add(this.read(buf));
+		}
+		if (buf.hasRemaining()) {
+			throw new SerializationException(buf.remaining()
+					+ " trailing bytes after URNs");
+		}
+		return urns;
+	}
+
+	/**
+	 * Get an upper bound of the number of bytes the URN takes when written by
+	 * this serializer, which stays valid while other URNs are written before
+	 * it. This may be more than {@link #size(ANES_URN)} for a session, whose
+	 * next identifier moves on with every definition written.
+	 * 
+	 * @param urn
+	 *            the URN to write
+	 * @return the maximum encoded size in bytes
+	 */
+	public int maxSize(ANES_URN urn) {
+		if (this.session == null) {
+			return this.size(urn);
+		}
+		final int ref = this.reference(urn);
+		if (ref != URNDictionary.NONE) {
+			return Varint.size((ref << 1) | REFERENCE);
+		}
+		final int length = urn.toString().length();
+		return Varint.size((length << 2) | DEFINITION) + Varint.MAX_SIZE
+				+ length;
+	}
+
+	/**
+	 * Read a URN from the current position of the buffer.
+	 * 
+	 * @param buf
+	 *            the buffer to read from
+	 * @return the URN read
+	 * @throws SerializationException
+	 *             if the buffer does not hold a valid URN at its position
+	 */
+	public ANES_URN read(ByteBuffer buf) throws SerializationException {
+		try {
+			final int header = Varint.read(buf);
+			if ((header & REFERENCE) != 0) {
+				return this.lookup(header >>> 1);
+			}
+			final int id;
+			if ((header & DEFINITION) != 0) {
+				id = Varint.read(buf);
+			} else {
+				id = URNDictionary.NONE;
+			}
+			final int length = header >>> 2;
+			if (length > buf.remaining()) {
+				throw new SerializationException("URN of " + length
+						+ " bytes exceeds the " + buf.remaining()
+						+ " bytes remaining");
+			}
+			final String text;
+			if (buf.hasArray()) {
+				text = new String(buf.array(), buf.arrayOffset()
+						+ buf.position(), length, UTF_8);
+				buf.position(buf.position() + length);
+			} else {
+				final byte[] bytes = new byte[length];
+				buf.get(bytes);
+				text = new String(bytes, UTF_8);
+			}
+			final ANES_URN urn = ANES_URN.intern(text);
+			if (id != URNDictionary.NONE) {
+				this.learn(id, urn);
+			}
+			return urn;
+		} catch (BufferUnderflowException e) {
+			throw new SerializationException("Truncated URN", e);
+		} catch (IllegalArgumentException e) {
+			throw new SerializationException("Invalid URN header", e);
+		} catch (URISyntaxException e) {
+			throw new SerializationException("Invalid URN", e);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public byte[] serialize(Object obj) throws SerializationException {
+		if (!(obj instanceof ANES_URN)) {
+			throw new SerializationException("Cannot serialize "
+					+ (obj == null ? null : obj.getClass()) + " as a URN");
+		}
+		final ANES_URN urn = (ANES_URN) obj;
+		final ByteBuffer buf = ByteBuffer.allocate(this.size(urn));
+		this.write(buf, urn);
+		return buf.array();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void serialize(Object obj, ByteBuffer buf)
+			throws SerializationException {
+		if (!(obj instanceof ANES_URN)) {
+			throw new SerializationException("Cannot serialize "
+					+ (obj == null ? null : obj.getClass()) + " as a URN");
+		}
+		final ANES_URN urn = (ANES_URN) obj;
+		if (this.size(urn) > buf.remaining()) {
+			throw new BufferOverflowException();
+		}
+		this.write(buf, urn);
+	}
+
+	/**
+	 * Serializes a collection of URNs to an array of bytes, as a
+	 * {@link Varint} count followed by each of the URNs. This is the compact
+	 * form of the identifiers returned by
+	 * {@link ParameterizationProxy#listParameters()}.
+	 * 
+	 * @param urns
+	 *            the URNs to serialize
+	 * @return the array of bytes representing the URNs
+	 * @throws SerializationException
+	 */
+	public byte[] serializeAll(Collection<ANES_URN> urns)
+			throws SerializationException {
+		int size = Varint.size(urns.size());
+		for (ANES_URN urn : urns) {
+			size += this.maxSize(urn);
+		}
+		final ByteBuffer buf = ByteBuffer.allocate(size);
+		Varint.write(buf, urns.size());
+		for (ANES_URN urn : urns) {
+			this.write(buf, urn);
+		}
+		if (buf.hasRemaining()) {
+			return Arrays.copyOf(buf.array(), buf.position());
+		}
+		return buf.array();
+	}
+
+	/**
+	 * Get the number of bytes the URN takes when written by this serializer.
+	 * 
+	 * @param urn
+	 *            the URN to write
+	 * @return the encoded size in bytes
+	 */
+	public int size(ANES_URN urn) {
+		final int ref = this.reference(urn);
+		if (ref != URNDictionary.NONE) {
+			return Varint.size((ref << 1) | REFERENCE);
+		}
+		final int length = urn.toString().length();
+		if (this.session != null && !this.session.isFull()) {
+			return Varint.size((length << 2) | DEFINITION)
+					+ Varint.size(this.session.nextId()) + length;
+		}
+		return Varint.size(length << 2) + length;
+	}
+
+	/**
+	 * Write a URN at the current position of the buffer.
+	 * 
+	 * @param buf
+	 *            the buffer to write to
+	 * @param urn
+	 *            the URN to write
+	 * @throws BufferOverflowException
+	 *             if the buffer has less than {@link #size(ANES_URN)} bytes
+	 *             remaining
+	 */
+	public void write(ByteBuffer buf, ANES_URN urn) {
+		final int ref = this.reference(urn);
+		if (ref != URNDictionary.NONE) {
+			Varint.write(buf, (ref << 1) | REFERENCE);
+			return;
+		}
+		// The URN syntax only allows ASCII, which is its own UTF-8 encoding
+		final String text = urn.toString();
+		final int length = text.length();
+		if (this.session != null && !this.session.isFull()) {
+			Varint.write(buf, (length << 2) | DEFINITION);
+			Varint.write(buf, this.session.define(urn));
+		} else {
+			Varint.write(buf, length << 2);
+		}
+		for (int i = 0; i < length; i++) {
+			buf.put((byte) text.charAt(i));
+		}
+	}
+
+	private void learn(int id, ANES_URN urn) throws SerializationException {
+		if (!(this.inbound instanceof SessionURNDictionary)) {
+			throw new SerializationException("Definition of " + urn
+					+ " outside of a session");
+		}
+		try {
+			((SessionURNDictionary) this.inbound).define(id, urn);
+		} catch (IllegalStateException e) {
+			throw new SerializationException("Out of order definition", e);
+		}
+	}
+
+	private ANES_URN lookup(int ref) throws SerializationException {
+		final ANES_URN urn;
+		if (this.inbound instanceof URNDictionary) {
+			urn = ((URNDictionary) this.inbound).urnOf(ref);
+		} else if (this.inbound == null || ref > 0xFF) {
+			urn = null;
+		} else {
+			urn = this.inbound.byteToURN((byte) ref);
+		}
+		if (urn == null) {
+			throw new SerializationException("Unknown URN reference " + ref);
+		}
+		return urn;
+	}
+
+	private int reference(ANES_URN urn) {
+		if (this.outbound instanceof URNDictionary) {
+			return ((URNDictionary) this.outbound).idOf(urn);
+		}
+		if (this.outbound == null) {
+			return URNDictionary.NONE;
+		}
+		final Byte b = this.outbound.URNToByte(urn);
+		if (b == null) {
+			return URNDictionary.NONE;
+		}
+		return b & 0xFF;
+	}
+
+}
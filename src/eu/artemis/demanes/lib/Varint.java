@@ -0,0 +1,111 @@
+/**
+ * File Varint.java
+ * 
+ * This file is part of the eu.artemis.demanes project.
+ *
+ * Copyright 2014 TNO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.artemis.demanes.lib;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * <h1>Varint</h1>
+ * 
+ * <p>
+ * Encoding of non-negative integers in a variable number of bytes, seven bits
+ * per byte with the high bit set on all but the last byte. Small values, such
+ * as lengths and dictionary references, take a single byte on the wire.
+ * </p>
+ *
+ * @author DEMANES
+ * @version 0.1
+ * @since 18 okt. 2026
+ *
+ */
+public final class Varint {
+
+	/**
+	 * Maximum number of bytes of an encoded int.
+	 */
+	public static final int MAX_SIZE = 5;
+
+	/**
+	 * Get the number of bytes the value takes when encoded.
+	 * 
+	 * @param value
+	 *            a non-negative value
+	 * @return the encoded size in bytes
+	 */
+	public static int size(int value) {
+		int size = 1;
+		while ((value & ~0x7F) != 0) {
+			value >>>= 7;
+			size++;
+		}
+		return size;
+	}
+
+	/**
+	 * Write the value at the current position of the buffer.
+	 * 
+	 * @param buf
+	 *            the buffer to write to
+	 * @param value
+	 *            a non-negative value
+	 */
+	public static void write(ByteBuffer buf, int value) {
+		if (value < 0) {
+			throw new IllegalArgumentException("Negative varint " + value);
+		}
+		while ((value & ~0x7F) != 0) {
+			buf.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		buf.put((byte) value);
+	}
+
+	/**
+	 * Read a value from the current position of the buffer.
+	 * 
+	 * @param buf
+	 *            the buffer to read from
+	 * @return the value read
+	 * @throws BufferUnderflowException
+	 *             if the buffer ends before the value does
+	 * @throws IllegalArgumentException
+	 *             if the bytes do not encode a non-negative int
+	 */
+	public static int read(ByteBuffer buf) {
+		int value = 0;
+		for (int shift = 0; shift < 7 * (MAX_SIZE - 1); shift += 7) {
+			final byte b = buf.get();
+			value |= (b & 0x7F) << shift;
+			if (b >= 0) {
+				return value;
+			}
+		}
+		final byte last = buf.get();
+		if ((last & 0xF8) != 0) {
+			throw new IllegalArgumentException("Malformed varint");
+		}
+		return value | (last << 7 * (MAX_SIZE - 1));
+	}
+
+	private Varint() {
+	}
+
+}
@@ -0,0 +1,260 @@
+/**
+ * File ConcurrentServiceRegistry.java
+ * 
+ * This file is part of the eu.artemis.demanes project.
+ *
+ * Copyright 2014 TNO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.artemis.demanes.lib.services;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import eu.artemis.demanes.datatypes.ANES_URN;
+import eu.artemis.demanes.datatypes.URNPattern;
+
+/**
+ * <h1>ConcurrentServiceRegistry</h1>
+ * 
+ * <p>
+ * A {@link ServiceRegistry} which is also the {@link ServiceProvider} of the
+ * services registered at it. Services are resolved from an immutable
+ * {@link Snapshot}, a {@link ServiceIndex} with a version. Resolving is a
+ * single volatile read of the current snapshot and a lookup in it, which
+ * never waits for other resolves or for registrations. A registration copies
+ * the index, changes the copy and publishes it as the next snapshot.
+ * Registrations are serialized, so they are meant to be rare compared to
+ * resolves.
+ * </p>
+ * 
+ * <p>
+ * Whoever needs a consistent view of several resolves, or caches what it
+ * resolved, can hold on to a {@link #snapshot()} and compare its version
+ * with {@link #version()}, or register a {@link ServiceRegistryListener}.
+ * Listeners are told about every change in the order of the versions, by the
+ * thread that made the change, after the new snapshot is published.
+ * </p>
+ *
+ * @author DEMANES
+ * @version 0.1
+ * @since 18 okt. 2026
+ *
+ */
+public class ConcurrentServiceRegistry implements ServiceRegistry,
+		ServiceProvider {
+
+	/**
+	 * The services registered at some moment. A snapshot never changes.
+	 */
+	public static final class Snapshot implements ServiceProvider {
+
+		private final ServiceIndex index;
+
+		private final long version;
+
+		Snapshot(ServiceIndex index, long version) {
+			this.index = index;
+			this.version = version;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 * 
+		 * <p>
+		 * This returns null if no service of the snapshot resolves the
+		 * identifier.
+		 * </p>
+		 */
+		@Override
+		public RESTService resolve(ANES_URN identifier) {
+			return this.index.resolve(identifier);
+		}
+
+		/**
+		 * Get the number of services registered by identifier.
+		 * 
+		 * @return the number of services
+		 */
+		public int size() {
+			return this.index.size();
+		}
+
+		/**
+		 * Get the version of the snapshot. Every change of the registry
+		 * publishes a snapshot with a higher version.
+		 * 
+		 * @return the version
+		 */
+		public long version() {
+			return this.version;
+		}
+
+	}
+
+	private final CopyOnWriteArrayList<ServiceRegistryListener> listeners = new CopyOnWriteArrayList<ServiceRegistryListener>();
+
+	private final Object lock = new Object();
+
+	private volatile Snapshot snapshot = new Snapshot(new ServiceIndex(), 0);
+
+	/**
+	 * Add a listener for the changes of the registry.
+	 * 
+	 * @param listener
+	 *            the listener to add
+	 */
+	public void addListener(ServiceRegistryListener listener) {
+		if (listener == null) {
+			throw new IllegalArgumentException("Listener must be non-null");
+		}
+		this.listeners.addIfAbsent(listener);
+	}
+
+	/**
+	 * Register the service for all requests matching the pattern, which are
+	 * not resolved by identifier.
+	 * 
+	 * @param pattern
+	 *            the pattern of the requests
+	 * @param service
+	 *            the service to register
+	 */
+	public void registerService(URNPattern pattern, RESTService service) {
+		if (pattern == null || service == null) {
+			throw new IllegalArgumentException(
+					"Pattern and service must be non-null");
+		}
+		synchronized (this.lock) {
+			final ServiceIndex index = new ServiceIndex(this.snapshot.index);
+			index.add(pattern, service);
+			this.publish(index);
+			this.registered(service);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void registerService(RESTService s) {
+		if (s == null) {
+			throw new IllegalArgumentException("Service must be non-null");
+		}
+		synchronized (this.lock) {
+			final ServiceIndex index = new ServiceIndex(this.snapshot.index);
+			if (!index.add(s)) {
+				return;
+			}
+			this.publish(index);
+			this.registered(s);
+		}
+	}
+
+	/**
+	 * Remove a listener for the changes of the registry.
+	 * 
+	 * @param listener
+	 *            the listener to remove
+	 */
+	public void removeListener(ServiceRegistryListener listener) {
+		this.listeners.remove(listener);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * <p>
+	 * This resolves the identifier in the current snapshot, and returns null
+	 * if no service resolves it.
+	 * </p>
+	 */
+	@Override
+	public RESTService resolve(ANES_URN identifier) {
+		return this.snapshot.resolve(identifier);
+	}
+
+	/**
+	 * Get the current snapshot.
+	 * 
+	 * @return the snapshot
+	 */
+	public Snapshot snapshot() {
+		return this.snapshot;
+	}
+
+	/**
+	 * Unregister the service registered for the pattern.
+	 * 
+	 * @param pattern
+	 *            the pattern of the requests
+	 * @param service
+	 *            the service to unregister
+	 */
+	public void unregisterService(URNPattern pattern, RESTService service) {
+		synchronized (this.lock) {
+			final ServiceIndex index = new ServiceIndex(this.snapshot.index);
+			if (!index.remove(pattern, service)) {
+				return;
+			}
+			this.publish(index);
+			this.unregistered(service);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void unregisterService(RESTService s) {
+		synchronized (this.lock) {
+			final Snapshot current = this.snapshot;
+			final RESTService registered = current.index.get(s.identifier());
+			if (registered == null) {
+				return;
+			}
+			final ServiceIndex index = new ServiceIndex(current.index);
+			index.remove(s);
+			this.publish(index);
+			this.unregistered(registered);
+		}
+	}
+
+	/**
+	 * Get the version of the current snapshot.
+	 * 
+	 * @return the version
+	 */
+	public long version() {
+		return this.snapshot.version;
+	}
+
+	private void publish(ServiceIndex index) {
+		this.snapshot = new Snapshot(index, this.snapshot.version + 1);
+	}
+
+	private void registered(RESTService service) {
+		final long version = this.snapshot.version;
+		for (ServiceRegistryListener listener : this.listeners) {
+			listener.serviceRegistered(service, version);
+		}
+	}
+
+	private void unregistered(RESTService service) {
+		final long version = this.snapshot.version;
+		for (ServiceRegistryListener listener : this.listeners) {
+			listener.serviceUnregistered(service, version);
+		}
+	}
+
+}
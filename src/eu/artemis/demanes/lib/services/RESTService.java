@@ -34,6 +34,12 @@ import eu.artemis.demanes.datatypes.ANES_URN;
  * interface makes sure all services can be addressed in a universal way.
  * </p>
  * 
+ * <p>
+ * The buffers returned by a service may be leased from a
+ * {@link eu.artemis.demanes.lib.BufferPool}, in which case the caller releases
+ * them to that pool once it is done with them.
+ * </p>
+ * 
  * </p> A nice video explaining the REST architectural style can be found in <a
  * href=http://www.restapitutorial.com/lessons/whatisrest.html>this video</a>
  * </p>
@@ -0,0 +1,369 @@
+/**
+ * File RequestCoalescer.java
+ * 
+ * This file is part of the eu.artemis.demanes project.
+ *
+ * Copyright 2014 TNO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.artemis.demanes.lib.services;
+
+import java.nio.ByteBuffer;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import eu.artemis.demanes.datatypes.ANES_URN;
+import eu.artemis.demanes.exceptions.ParameterizationAccessorException;
+import eu.artemis.demanes.exceptions.ParameterizationException;
+import eu.artemis.demanes.parameterization.Parameterizable;
+
+/**
+ * <h1>RequestCoalescer</h1>
+ * 
+ * <p>
+ * Collapses concurrent identical reads into one call, to protect slow
+ * devices from bursts of the same request, such as the requests of many
+ * peers after a broadcast trigger. The first
+ * {@link RESTService#get(ByteBuffer)} of a request, or
+ * {@link Parameterizable#getParameter(ANES_URN)} of a parameter, calls the
+ * target; identical reads which arrive while that call is in flight wait
+ * for it and get its result, or its exception. A read which arrives after
+ * the call is done makes a call of its own, so nothing is cached.
+ * </p>
+ * 
+ * <p>
+ * Gets are identical if they address the same identifier without params
+ * with the same request content. The caller of the call gets the response as
+ * the service returned it; the others each get a read-only buffer on a copy
+ * of it, which is only made if there are others. Parameter values are shared
+ * by all readers of the call.
+ * </p>
+ *
+ * @author DEMANES
+ * @version 0.1
+ * @since 18 okt. 2026
+ *
+ */
+public class RequestCoalescer {
+
+	private class CoalescedParameterizable implements Parameterizable {
+
+		private final ConcurrentMap<ANES_URN, FutureTask<Object>> flights = new ConcurrentHashMap<ANES_URN, FutureTask<Object>>();
+
+		private final Parameterizable target;
+
+		CoalescedParameterizable(Parameterizable target) {
+			this.target = target;
+		}
+
+		@Override
+		public Object getParameter(final ANES_URN urn)
+				throws ParameterizationException {
+			final FutureTask<Object> call = new FutureTask<Object>(
+					new Callable<Object>() {
+
+						@Override
+						public Object call() throws ParameterizationException {
+							return CoalescedParameterizable.this.target
+									.getParameter(urn);
+						}
+
+					});
+			final FutureTask<Object> flight = RequestCoalescer.this.join(
+					this.flights, urn, call);
+			try {
+				return flight.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new ParameterizationAccessorException(
+						"Interrupted while waiting for " + urn, e);
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof ParameterizationException) {
+					throw (ParameterizationException) e.getCause();
+				}
+				throw RequestCoalescer.unchecked(e.getCause());
+			}
+		}
+
+		@Override
+		public Set<ANES_URN> listParameters() throws ParameterizationException {
+			return this.target.listParameters();
+		}
+
+		@Override
+		public void setParameter(ANES_URN urn, Object value)
+				throws ParameterizationException {
+			this.target.setParameter(urn, value);
+		}
+
+	}
+
+	private class CoalescedProvider implements ServiceProvider {
+
+		private final ServiceProvider target;
+
+		CoalescedProvider(ServiceProvider target) {
+			this.target = target;
+		}
+
+		@Override
+		public RESTService resolve(ANES_URN identifier) {
+			final RESTService service = this.target.resolve(identifier);
+			return service == null ? null : RequestCoalescer.this
+					.coalesce(service);
+		}
+
+	}
+
+	private class CoalescedService implements RESTService {
+
+		private final RESTService target;
+
+		CoalescedService(RESTService target) {
+			this.target = target;
+		}
+
+		@Override
+		public ByteBuffer delete(ByteBuffer input) throws ServiceException {
+			return this.target.delete(input);
+		}
+
+		@Override
+		public ByteBuffer get(ByteBuffer input) throws ServiceException {
+			final Get get = new Get(this.target, input);
+			final Get flight = RequestCoalescer.this.flights.putIfAbsent(
+					get.key, get);
+			if (flight != null && !flight.follow()) {
+				// Too late to wait for the call in flight
+				RequestCoalescer.this.calls.incrementAndGet();
+				return this.target.get(input);
+			}
+			try {
+				if (flight == null) {
+					RequestCoalescer.this.calls.incrementAndGet();
+					try {
+						get.task.run();
+					} finally {
+						RequestCoalescer.this.flights.remove(get.key, get);
+					}
+					get.task.get();
+					return get.response;
+				}
+				RequestCoalescer.this.coalesced.incrementAndGet();
+				final byte[] response = flight.task.get();
+				return response == null ? null : ByteBuffer.wrap(response)
+						.asReadOnlyBuffer();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new ServiceException("Interrupted while waiting for "
+						+ get.key.identifier(), e);
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof ServiceException) {
+					throw (ServiceException) e.getCause();
+				}
+				throw RequestCoalescer.unchecked(e.getCause());
+			}
+		}
+
+		@Override
+		public ANES_URN identifier() {
+			return this.target.identifier();
+		}
+
+		@Override
+		public ByteBuffer post(ByteBuffer input) throws ServiceException {
+			return this.target.post(input);
+		}
+
+		@Override
+		public ByteBuffer put(ByteBuffer input) throws ServiceException {
+			return this.target.put(input);
+		}
+
+	}
+
+	/**
+	 * The call of a get, which keeps the response for its own caller, and
+	 * gives the others a copy. The copy is only made if others followed the
+	 * call before it returned; once it returned, it takes no more followers.
+	 */
+	private static final class Get implements Callable<byte[]> {
+
+		/**
+		 * The number of followers, or -1 once the call returned.
+		 */
+		private final AtomicInteger followers = new AtomicInteger();
+
+		private final ByteBuffer input;
+
+		private final RequestKey key;
+
+		private ByteBuffer response;
+
+		private final RESTService service;
+
+		private final FutureTask<byte[]> task;
+
+		Get(RESTService service, ByteBuffer input) {
+			this.service = service;
+			this.input = input;
+			this.key = new RequestKey(service.identifier(), input);
+			this.task = new FutureTask<byte[]>(this);
+		}
+
+		@Override
+		public byte[] call() throws ServiceException {
+			int count = 0;
+			try {
+				this.response = this.service.get(this.input);
+			} finally {
+				count = this.followers.getAndSet(-1);
+			}
+			if (count == 0 || this.response == null) {
+				return null;
+			}
+			return RequestKey.contentOf(this.response);
+		}
+
+		/**
+		 * Wait for the result of this call, if it did not return yet.
+		 * 
+		 * @return false if the call already returned
+		 */
+		boolean follow() {
+			int count;
+			do {
+				count = this.followers.get();
+				if (count < 0) {
+					return false;
+				}
+			} while (!this.followers.compareAndSet(count, count + 1));
+			return true;
+		}
+
+	}
+
+	private static RuntimeException unchecked(Throwable cause) {
+		if (cause instanceof Error) {
+			throw (Error) cause;
+		}
+		if (cause instanceof RuntimeException) {
+			return (RuntimeException) cause;
+		}
+		return new IllegalStateException(cause);
+	}
+
+	private final AtomicLong calls = new AtomicLong();
+
+	private final AtomicLong coalesced = new AtomicLong();
+
+	private final ConcurrentMap<RequestKey, Get> flights = new ConcurrentHashMap<RequestKey, Get>();
+
+	/**
+	 * Get the number of reads which called the target.
+	 * 
+	 * @return the number of calls
+	 */
+	public long calls() {
+		return this.calls.get();
+	}
+
+	/**
+	 * Coalesce the parameter reads of a parameterizable.
+	 * 
+	 * @param parameterizable
+	 *            the parameterizable
+	 * @return a parameterizable which coalesces the reads of the given one
+	 */
+	public Parameterizable coalesce(Parameterizable parameterizable) {
+		if (parameterizable == null) {
+			throw new IllegalArgumentException(
+					"Parameterizable must be non-null");
+		}
+		return new CoalescedParameterizable(parameterizable);
+	}
+
+	/**
+	 * Coalesce the gets of a service.
+	 * 
+	 * @param service
+	 *            the service
+	 * @return a service which coalesces the gets of the given one
+	 */
+	public RESTService coalesce(RESTService service) {
+		if (service == null) {
+			throw new IllegalArgumentException("Service must be non-null");
+		}
+		return new CoalescedService(service);
+	}
+
+	/**
+	 * Coalesce the gets of all services of a provider.
+	 * 
+	 * @param provider
+	 *            the provider of the services
+	 * @return a provider which resolves to coalescing services
+	 */
+	public ServiceProvider coalesce(ServiceProvider provider) {
+		if (provider == null) {
+			throw new IllegalArgumentException("Provider must be non-null");
+		}
+		return new CoalescedProvider(provider);
+	}
+
+	/**
+	 * Get the number of reads which waited for the call of another.
+	 * 
+	 * @return the number of coalesced reads
+	 */
+	public long coalesced() {
+		return this.coalesced.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		return String.format("RequestCoalescer[calls=%d, coalesced=%d]",
+				this.calls(), this.coalesced());
+	}
+
+	/**
+	 * Join the call in flight for the key, or make the given call if there is
+	 * none. The call is made by the calling thread, and removed once done.
+	 */
+	private <K, V> FutureTask<V> join(ConcurrentMap<K, FutureTask<V>> flights,
+			K key, FutureTask<V> call) {
+		final FutureTask<V> flight = flights.putIfAbsent(key, call);
+		if (flight != null) {
+			this.coalesced.incrementAndGet();
+			return flight;
+		}
+		this.calls.incrementAndGet();
+		try {
+			call.run();
+		} finally {
+			flights.remove(key, call);
+		}
+		return call;
+	}
+
+}
@@ -0,0 +1,111 @@
+/**
+ * File RequestKey.java
+ * 
+ * This file is part of the eu.artemis.demanes project.
+ *
+ * Copyright 2014 TNO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.artemis.demanes.lib.services;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import eu.artemis.demanes.datatypes.ANES_URN;
+
+/**
+ * <h1>RequestKey</h1>
+ * 
+ * <p>
+ * The identity of a request to a service: the identifier of the service
+ * without params, and a copy of the content of the request. Requests with
+ * equal keys are expected to get equal responses from a get.
+ * </p>
+ *
+ * @author DEMANES
+ * @version 0.1
+ * @since 18 okt. 2026
+ *
+ */
+final class RequestKey {
+
+	private static final byte[] EMPTY = new byte[0];
+
+	private final int hash;
+
+	private final ANES_URN identifier;
+
+	private final byte[] request;
+
+	/**
+	 * @param identifier
+	 *            the identifier of the service
+	 * @param request
+	 *            the request, or null; its position is not changed
+	 */
+	RequestKey(ANES_URN identifier, ByteBuffer request) {
+		this.identifier = identifier.pure();
+		this.request = RequestKey.contentOf(request);
+		this.hash = 31 * this.identifier.hashCode()
+				+ Arrays.hashCode(this.request);
+	}
+
+	/**
+	 * Copy the remaining content of a buffer, without changing its position.
+	 * 
+	 * @param buffer
+	 *            the buffer, or null
+	 * @return the content, which is empty for null
+	 */
+	static byte[] contentOf(ByteBuffer buffer) {
+		if (buffer == null || !buffer.hasRemaining()) {
+			return EMPTY;
+		}
+		final byte[] content = new byte[buffer.remaining()];
+		buffer.duplicate().get(content);
+		return content;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof RequestKey)) {
+			return false;
+		}
+		final RequestKey other = (RequestKey) obj;
+		return this.hash == other.hash
+				&& this.identifier.equals(other.identifier)
+				&& Arrays.equals(this.request, other.request);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int hashCode() {
+		return this.hash;
+	}
+
+	/**
+	 * Get the identifier of the service without params.
+	 * 
+	 * @return the identifier
+	 */
+	ANES_URN identifier() {
+		return this.identifier;
+	}
+
+}
@@ -0,0 +1,412 @@
+/**
+ * File ServiceCache.java
+ * 
+ * This file is part of the eu.artemis.demanes project.
+ *
+ * Copyright 2014 TNO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.artemis.demanes.lib.services;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import eu.artemis.demanes.datatypes.ANES_URN;
+
+/**
+ * <h1>ServiceCache</h1>
+ * 
+ * <p>
+ * Caches the responses of {@link RESTService#get(ByteBuffer)}, for services
+ * of which a get has no side effects. A response is kept under the identifier
+ * of the service without params and the content of the request, for the time
+ * to live of that identifier. A service with a time to live of zero is not
+ * cached. The cache holds a bounded number of responses. When it is full it
+ * evicts expired responses, and responses not used since the eviction last
+ * passed them, by the clock algorithm: an approximation of least recently
+ * used in which a hit only sets a flag, so that hits take no lock.
+ * </p>
+ * 
+ * <p>
+ * A put, post or delete through a decorator of the cache invalidates all
+ * responses of the identifier once it is done, as does a change of the
+ * service in a {@link ConcurrentServiceRegistry} the cache listens to. A get
+ * which runs concurrently with the invalidation does not cache its response.
+ * </p>
+ * 
+ * <p>
+ * Responses are copied into the cache. A hit returns a read-only buffer on
+ * the copy, which the caller must not release to a pool; the response of a
+ * miss is handed to the caller as the service returned it.
+ * </p>
+ *
+ * @author DEMANES
+ * @version 0.1
+ * @since 18 okt. 2026
+ *
+ */
+public class ServiceCache implements ServiceRegistryListener {
+
+	private class CachedProvider implements ServiceProvider {
+
+		private final ServiceProvider target;
+
+		CachedProvider(ServiceProvider target) {
+			this.target = target;
+		}
+
+		@Override
+		public RESTService resolve(ANES_URN identifier) {
+			final RESTService service = this.target.resolve(identifier);
+			return service == null ? null : ServiceCache.this.cache(service);
+		}
+
+	}
+
+	private static final class CachedResponse {
+
+		private final long expires;
+
+		private final long generation;
+
+		/**
+		 * Whether the response was used since the eviction last passed it.
+		 */
+		private volatile boolean referenced;
+
+		private final byte[] response;
+
+		CachedResponse(byte[] response, long generation, long expires) {
+			this.response = response;
+			this.generation = generation;
+			this.expires = expires;
+		}
+
+	}
+
+	private class CachedService implements RESTService {
+
+		private final RESTService target;
+
+		CachedService(RESTService target) {
+			this.target = target;
+		}
+
+		@Override
+		public ByteBuffer delete(ByteBuffer input) throws ServiceException {
+			try {
+				return this.target.delete(input);
+			} finally {
+				ServiceCache.this.invalidate(this.target.identifier());
+			}
+		}
+
+		@Override
+		public ByteBuffer get(ByteBuffer input) throws ServiceException {
+			return ServiceCache.this.get(this.target, input);
+		}
+
+		@Override
+		public ANES_URN identifier() {
+			return this.target.identifier();
+		}
+
+		@Override
+		public ByteBuffer post(ByteBuffer input) throws ServiceException {
+			try {
+				return this.target.post(input);
+			} finally {
+				ServiceCache.this.invalidate(this.target.identifier());
+			}
+		}
+
+		@Override
+		public ByteBuffer put(ByteBuffer input) throws ServiceException {
+			try {
+				return this.target.put(input);
+			} finally {
+				ServiceCache.this.invalidate(this.target.identifier());
+			}
+		}
+
+	}
+
+	/**
+	 * The keys of the responses in the order the eviction passes them.
+	 */
+	private final Queue<RequestKey> clock = new ConcurrentLinkedQueue<RequestKey>();
+
+	private final ConcurrentMap<RequestKey, CachedResponse> entries = new ConcurrentHashMap<RequestKey, CachedResponse>();
+
+	private final AtomicLong evictions = new AtomicLong();
+
+	private final ConcurrentMap<ANES_URN, AtomicLong> generations = new ConcurrentHashMap<ANES_URN, AtomicLong>();
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final int maxEntries;
+
+	private final AtomicLong misses = new AtomicLong();
+
+	private final long timeToLive;
+
+	private final ConcurrentMap<ANES_URN, Long> timesToLive = new ConcurrentHashMap<ANES_URN, Long>();
+
+	/**
+	 * Create a cache.
+	 * 
+	 * @param maxEntries
+	 *            the number of responses the cache holds at most
+	 * @param timeToLive
+	 *            how long a response is kept, unless the identifier has a time
+	 *            to live of its own
+	 * @param unit
+	 *            the unit of the time to live
+	 */
+	public ServiceCache(int maxEntries, long timeToLive, TimeUnit unit) {
+		if (maxEntries <= 0 || timeToLive < 0) {
+			throw new IllegalArgumentException(
+					"Size must be positive and time to live non-negative");
+		}
+		this.maxEntries = maxEntries;
+		this.timeToLive = unit.toNanos(timeToLive);
+	}
+
+	/**
+	 * Cache the gets of a service.
+	 * 
+	 * @param service
+	 *            the service to cache
+	 * @return a service which answers gets from the cache where it can
+	 */
+	public RESTService cache(RESTService service) {
+		if (service == null) {
+			throw new IllegalArgumentException("Service must be non-null");
+		}
+		return new CachedService(service);
+	}
+
+	/**
+	 * Cache the gets of all services of a provider.
+	 * 
+	 * @param provider
+	 *            the provider of the services to cache
+	 * @return a provider which resolves to cached services
+	 */
+	public ServiceProvider cache(ServiceProvider provider) {
+		if (provider == null) {
+			throw new IllegalArgumentException("Provider must be non-null");
+		}
+		return new CachedProvider(provider);
+	}
+
+	/**
+	 * Remove all responses from the cache.
+	 */
+	public void clear() {
+		for (AtomicLong generation : this.generations.values()) {
+			generation.incrementAndGet();
+		}
+		this.entries.clear();
+		this.clock.clear();
+	}
+
+	/**
+	 * Get the number of responses evicted to make room for others.
+	 * 
+	 * @return the number of evictions
+	 */
+	public long evictions() {
+		return this.evictions.get();
+	}
+
+	/**
+	 * Get the fraction of the gets answered from the cache.
+	 * 
+	 * @return the hit rate, or 0 if there were no gets
+	 */
+	public double hitRate() {
+		final long hits = this.hits.get();
+		final long total = hits + this.misses.get();
+		return total == 0 ? 0 : (double) hits / total;
+	}
+
+	/**
+	 * Get the number of gets answered from the cache.
+	 * 
+	 * @return the number of hits
+	 */
+	public long hits() {
+		return this.hits.get();
+	}
+
+	/**
+	 * Invalidate all responses of the identifier. This happens on every put,
+	 * post or delete through the cache; a service which changes otherwise
+	 * calls this itself.
+	 * 
+	 * @param identifier
+	 *            the identifier of a service
+	 */
+	public void invalidate(ANES_URN identifier) {
+		this.generationOf(identifier.pure()).incrementAndGet();
+	}
+
+	/**
+	 * Get the number of gets passed on to the service.
+	 * 
+	 * @return the number of misses
+	 */
+	public long misses() {
+		return this.misses.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void serviceRegistered(RESTService service, long version) {
+		this.invalidate(service.identifier());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void serviceUnregistered(RESTService service, long version) {
+		this.invalidate(service.identifier());
+	}
+
+	/**
+	 * Give an identifier a time to live other than the default.
+	 * 
+	 * @param identifier
+	 *            the identifier of a service
+	 * @param timeToLive
+	 *            how long a response of the service is kept, or 0 to not
+	 *            cache the service
+	 * @param unit
+	 *            the unit of the time to live
+	 */
+	public void setTimeToLive(ANES_URN identifier, long timeToLive,
+			TimeUnit unit) {
+		if (timeToLive < 0) {
+			throw new IllegalArgumentException(
+					"Time to live must be non-negative");
+		}
+		this.timesToLive.put(identifier.pure(), unit.toNanos(timeToLive));
+		this.invalidate(identifier);
+	}
+
+	/**
+	 * Get the number of responses in the cache, including those which
+	 * expired or were invalidated, but were not yet evicted.
+	 * 
+	 * @return the number of responses
+	 */
+	public int size() {
+		return this.entries.size();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		return String.format(
+				"ServiceCache[size=%d, hits=%d, misses=%d, evictions=%d]",
+				this.size(), this.hits(), this.misses(), this.evictions());
+	}
+
+	/**
+	 * Evict responses until the cache is no longer over its size. A response
+	 * that was used since the last pass gets a second chance.
+	 */
+	private void evict() {
+		while (this.entries.size() > this.maxEntries) {
+			final RequestKey key = this.clock.poll();
+			if (key == null) {
+				return;
+			}
+			final CachedResponse entry = this.entries.get(key);
+			if (entry == null) {
+				continue;
+			}
+			if (entry.referenced && entry.expires - System.nanoTime() > 0) {
+				entry.referenced = false;
+				this.clock.offer(key);
+				continue;
+			}
+			if (this.entries.remove(key, entry)) {
+				this.evictions.incrementAndGet();
+			}
+		}
+	}
+
+	private AtomicLong generationOf(ANES_URN identifier) {
+		final AtomicLong generation = this.generations.get(identifier);
+		if (generation != null) {
+			return generation;
+		}
+		final AtomicLong created = new AtomicLong();
+		final AtomicLong raced = this.generations.putIfAbsent(identifier,
+				created);
+		return raced == null ? created : raced;
+	}
+
+	private ByteBuffer get(RESTService service, ByteBuffer input)
+			throws ServiceException {
+		final ANES_URN identifier = service.identifier().pure();
+		final Long own = this.timesToLive.get(identifier);
+		final long timeToLive = own == null ? this.timeToLive : own
+				.longValue();
+		if (timeToLive == 0) {
+			this.misses.incrementAndGet();
+			return service.get(input);
+		}
+		final RequestKey key = new RequestKey(identifier, input);
+		final long generation = this.generationOf(identifier).get();
+		final CachedResponse cached = this.entries.get(key);
+		if (cached != null && cached.generation == generation
+				&& cached.expires - System.nanoTime() > 0) {
+			if (!cached.referenced) {
+				cached.referenced = true;
+			}
+			this.hits.incrementAndGet();
+			if (cached.response == null) {
+				return null;
+			}
+			return ByteBuffer.wrap(cached.response).asReadOnlyBuffer();
+		}
+		this.misses.incrementAndGet();
+		final ByteBuffer response = service.get(input);
+		if (this.generationOf(identifier).get() != generation) {
+			return response;
+		}
+		final CachedResponse entry = new CachedResponse(
+				response == null ? null : RequestKey.contentOf(response),
+				generation, System.nanoTime() + timeToLive);
+		if (this.entries.put(key, entry) == null) {
+			this.clock.offer(key);
+			this.evict();
+		}
+		return response;
+	}
+
+}
@@ -0,0 +1,266 @@
+/**
+ * File ServiceIndex.java
+ * 
+ * This file is part of the eu.artemis.demanes project.
+ *
+ * Copyright 2014 TNO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.artemis.demanes.lib.services;
+
+import eu.artemis.demanes.datatypes.ANES_URN;
+import eu.artemis.demanes.datatypes.URNPattern;
+import eu.artemis.demanes.datatypes.URNPatternSet;
+
+/**
+ * <h1>ServiceIndex</h1>
+ * 
+ * <p>
+ * A {@link ServiceProvider} which resolves the services added to it. Services
+ * are kept in an open-addressing table keyed by their identifier without
+ * params, which is computed once when a service is added. A request is looked
+ * up with the hash of its URN without params, which the URN computes once
+ * from its text, and compared with the keys on their text up to the params.
+ * Resolving a request, whatever its params, is one probe of the table that
+ * creates no strings or URNs.
+ * </p>
+ * 
+ * <p>
+ * A service may also be added for a {@link URNPattern}, such as
+ * <code>urn:demanes:sensor:*</code>. Requests that match no identifier in the
+ * table resolve to the service of the most specific pattern they match,
+ * found in a {@link URNPatternSet}.
+ * </p>
+ * 
+ * <p>
+ * An index is not thread-safe. An index that is no longer modified after it
+ * has been safely published may be resolved from any number of threads; the
+ * copy constructor helps to publish a modified index in that way.
+ * </p>
+ *
+ * @author DEMANES
+ * @version 0.1
+ * @since 18 okt. 2026
+ *
+ */
+public class ServiceIndex implements ServiceProvider {
+
+	private static final int INITIAL_SIZE = 16;
+
+	private int[] hashes;
+
+	private ANES_URN[] keys;
+
+	private final URNPatternSet<RESTService> patterns;
+
+	private RESTService[] services;
+
+	private int size;
+
+	/**
+	 * Create an empty index.
+	 */
+	public ServiceIndex() {
+		this.allocate(INITIAL_SIZE);
+		this.patterns = new URNPatternSet<RESTService>();
+	}
+
+	/**
+	 * Create a copy of the index, which can be modified independently.
+	 * 
+	 * @param other
+	 *            the index to copy
+	 */
+	public ServiceIndex(ServiceIndex other) {
+		this.hashes = other.hashes.clone();
+		this.keys = other.keys.clone();
+		this.services = other.services.clone();
+		this.size = other.size;
+		this.patterns = new URNPatternSet<RESTService>(other.patterns);
+	}
+
+	/**
+	 * Add the service under its identifier without params. If a service with
+	 * the same identifier was added before, nothing happens.
+	 * 
+	 * @param service
+	 *            the service to add
+	 * @return whether the service was added
+	 */
+	public boolean add(RESTService service) {
+		final ANES_URN key = service.identifier().pure();
+		final int hash = key.hashCode();
+		if (this.find(key, hash) >= 0) {
+			return false;
+		}
+		if (2 * (this.size + 1) > this.keys.length) {
+			this.rehash(2 * this.keys.length);
+		}
+		this.insert(key, hash, service);
+		this.size++;
+		return true;
+	}
+
+	/**
+	 * Add the service for all requests matching the pattern, which are not
+	 * resolved by identifier.
+	 * 
+	 * @param pattern
+	 *            the pattern of the requests
+	 * @param service
+	 *            the service to add
+	 */
+	public void add(URNPattern pattern, RESTService service) {
+		this.patterns.add(pattern, service);
+	}
+
+	/**
+	 * Get the service added under the identifier without params, without
+	 * falling back to the patterns.
+	 * 
+	 * @param identifier
+	 *            the identifier of the service
+	 * @return the service, or null if there is none
+	 */
+	public RESTService get(ANES_URN identifier) {
+		final int slot = this.find(identifier, identifier.pureHashCode());
+		return slot < 0 ? null : this.services[slot];
+	}
+
+	/**
+	 * Remove the service with the same identifier as the given service,
+	 * which need not be the same service.
+	 * 
+	 * @param service
+	 *            the service to remove
+	 * @return whether a service was removed
+	 */
+	public boolean remove(RESTService service) {
+		final ANES_URN identifier = service.identifier();
+		final int slot = this.find(identifier, identifier.pureHashCode());
+		if (slot < 0) {
+			return false;
+		}
+		this.delete(slot);
+		this.size--;
+		return true;
+	}
+
+	/**
+	 * Remove the service added for the pattern.
+	 * 
+	 * @param pattern
+	 *            the pattern of the requests
+	 * @param service
+	 *            the service to remove
+	 * @return whether the service was added for the pattern
+	 */
+	public boolean remove(URNPattern pattern, RESTService service) {
+		return this.patterns.remove(pattern, service);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * <p>
+	 * This returns null if no service resolves the identifier.
+	 * </p>
+	 */
+	@Override
+	public RESTService resolve(ANES_URN identifier) {
+		final int slot = this.find(identifier, identifier.pureHashCode());
+		if (slot >= 0) {
+			return this.services[slot];
+		}
+		if (this.patterns.isEmpty()) {
+			return null;
+		}
+		return this.patterns.best(identifier.pure());
+	}
+
+	/**
+	 * Get the number of services added under their identifier.
+	 * 
+	 * @return the number of services
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	private static int spread(int hash) {
+		return hash ^ (hash >>> 16);
+	}
+
+	private void allocate(int length) {
+		this.hashes = new int[length];
+		this.keys = new ANES_URN[length];
+		this.services = new RESTService[length];
+	}
+
+	private void delete(int slot) {
+		// Shift the entries after the slot back, so that no entry ends up
+		// behind a free slot on the way from its home slot
+		final int mask = this.keys.length - 1;
+		int free = slot;
+		for (int i = (free + 1) & mask; this.keys[i] != null; i = (i + 1)
+				& mask) {
+			final int home = ServiceIndex.spread(this.hashes[i]) & mask;
+			if (((i - home) & mask) >= ((i - free) & mask)) {
+				this.hashes[free] = this.hashes[i];
+				this.keys[free] = this.keys[i];
+				this.services[free] = this.services[i];
+				free = i;
+			}
+		}
+		this.hashes[free] = 0;
+		this.keys[free] = null;
+		this.services[free] = null;
+	}
+
+	private int find(ANES_URN identifier, int hash) {
+		final int mask = this.keys.length - 1;
+		int i = ServiceIndex.spread(hash) & mask;
+		for (ANES_URN key = this.keys[i]; key != null; key = this.keys[i]) {
+			if (this.hashes[i] == hash && key.pureEquals(identifier)) {
+				return i;
+			}
+			i = (i + 1) & mask;
+		}
+		return -1;
+	}
+
+	private void insert(ANES_URN key, int hash, RESTService service) {
+		final int mask = this.keys.length - 1;
+		int i = ServiceIndex.spread(hash) & mask;
+		while (this.keys[i] != null) {
+			i = (i + 1) & mask;
+		}
+		this.hashes[i] = hash;
+		this.keys[i] = key;
+		this.services[i] = service;
+	}
+
+	private void rehash(int length) {
+		final int[] hashes = this.hashes;
+		final ANES_URN[] keys = this.keys;
+		final RESTService[] services = this.services;
+		this.allocate(length);
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] != null) {
+				this.insert(keys[i], hashes[i], services[i]);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,329 @@
+/**
+ * File ServiceLimiter.java
+ * 
+ * This file is part of the eu.artemis.demanes project.
+ *
+ * Copyright 2014 TNO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.artemis.demanes.lib.services;
+
+import java.nio.ByteBuffer;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import eu.artemis.demanes.datatypes.ANES_URN;
+import eu.artemis.demanes.exceptions.ParameterizationAccessorException;
+import eu.artemis.demanes.exceptions.ParameterizationException;
+import eu.artemis.demanes.parameterization.Parameterizable;
+
+/**
+ * <h1>ServiceLimiter</h1>
+ * 
+ * <p>
+ * Bounds the number of concurrent calls per identifier, so that a device
+ * behind a service is not flooded with requests when dispatches run on
+ * virtual threads (see {@link eu.artemis.demanes.lib.DispatchExecutors}).
+ * Every identifier has a semaphore of its own: of a {@link RESTService} the
+ * identifier of the service, and of a {@link Parameterizable} the URN of the
+ * parameter, both without their query, so that calls with different queries
+ * share the permits of their identifier. A call which finds all permits of
+ * its identifier taken waits for one, which holds up the dispatch and so
+ * pushes back on the peer. With a timeout, a call which waits longer fails.
+ * </p>
+ * 
+ * <p>
+ * The limiter decorates services, service providers and parameterizables.
+ * All decorators of one limiter share its semaphores.
+ * </p>
+ *
+ * @author DEMANES
+ * @version 0.1
+ * @since 18 okt. 2026
+ *
+ */
+public class ServiceLimiter {
+
+	private class LimitedParameterizable implements Parameterizable {
+
+		private final Parameterizable target;
+
+		LimitedParameterizable(Parameterizable target) {
+			this.target = target;
+		}
+
+		@Override
+		public Object getParameter(ANES_URN urn)
+				throws ParameterizationException {
+			final Semaphore permits = ServiceLimiter.this.permitsOf(urn);
+			this.acquire(urn, permits);
+			try {
+				return this.target.getParameter(urn);
+			} finally {
+				permits.release();
+			}
+		}
+
+		@Override
+		public Set<ANES_URN> listParameters() throws ParameterizationException {
+			return this.target.listParameters();
+		}
+
+		@Override
+		public void setParameter(ANES_URN urn, Object value)
+				throws ParameterizationException {
+			final Semaphore permits = ServiceLimiter.this.permitsOf(urn);
+			this.acquire(urn, permits);
+			try {
+				this.target.setParameter(urn, value);
+			} finally {
+				permits.release();
+			}
+		}
+
+		private void acquire(ANES_URN urn, Semaphore permits)
+				throws ParameterizationException {
+			try {
+				ServiceLimiter.this.acquire(permits);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new ParameterizationAccessorException(
+						"Interrupted while waiting for " + urn, e);
+			} catch (TimeoutException e) {
+				throw new ParameterizationAccessorException(urn + " is busy",
+						e);
+			}
+		}
+
+	}
+
+	private class LimitedProvider implements ServiceProvider {
+
+		private final ServiceProvider target;
+
+		LimitedProvider(ServiceProvider target) {
+			this.target = target;
+		}
+
+		@Override
+		public RESTService resolve(ANES_URN identifier) {
+			final RESTService service = this.target.resolve(identifier);
+			return service == null ? null : ServiceLimiter.this.limit(service);
+		}
+
+	}
+
+	private class LimitedService implements RESTService {
+
+		private final RESTService target;
+
+		LimitedService(RESTService target) {
+			this.target = target;
+		}
+
+		@Override
+		public ByteBuffer delete(ByteBuffer input) throws ServiceException {
+			final Semaphore permits = this.acquire();
+			try {
+				return this.target.delete(input);
+			} finally {
+				permits.release();
+			}
+		}
+
+		@Override
+		public ByteBuffer get(ByteBuffer input) throws ServiceException {
+			final Semaphore permits = this.acquire();
+			try {
+				return this.target.get(input);
+			} finally {
+				permits.release();
+			}
+		}
+
+		@Override
+		public ANES_URN identifier() {
+			return this.target.identifier();
+		}
+
+		@Override
+		public ByteBuffer post(ByteBuffer input) throws ServiceException {
+			final Semaphore permits = this.acquire();
+			try {
+				return this.target.post(input);
+			} finally {
+				permits.release();
+			}
+		}
+
+		@Override
+		public ByteBuffer put(ByteBuffer input) throws ServiceException {
+			final Semaphore permits = this.acquire();
+			try {
+				return this.target.put(input);
+			} finally {
+				permits.release();
+			}
+		}
+
+		private Semaphore acquire() throws ServiceException {
+			final ANES_URN identifier = this.target.identifier();
+			final Semaphore permits = ServiceLimiter.this
+					.permitsOf(identifier);
+			try {
+				ServiceLimiter.this.acquire(permits);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new ServiceException("Interrupted while waiting for "
+						+ identifier, e);
+			} catch (TimeoutException e) {
+				throw new ServiceException(identifier + " is busy", e);
+			}
+			return permits;
+		}
+
+	}
+
+	private final int permits;
+
+	private final ConcurrentMap<ANES_URN, Semaphore> semaphores = new ConcurrentHashMap<ANES_URN, Semaphore>();
+
+	private final long timeout;
+
+	/**
+	 * Create a limiter of which calls wait for a permit as long as it takes.
+	 * 
+	 * @param permits
+	 *            the number of concurrent calls per identifier
+	 */
+	public ServiceLimiter(int permits) {
+		this(permits, -1, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Create a limiter of which calls wait for a permit at most the timeout.
+	 * 
+	 * @param permits
+	 *            the number of concurrent calls per identifier
+	 * @param timeout
+	 *            the longest time to wait for a permit, or a negative value
+	 *            to wait as long as it takes
+	 * @param unit
+	 *            the unit of the timeout
+	 */
+	public ServiceLimiter(int permits, long timeout, TimeUnit unit) {
+		if (permits <= 0) {
+			throw new IllegalArgumentException("Permits must be positive");
+		}
+		this.permits = permits;
+		this.timeout = timeout < 0 ? -1 : unit.toNanos(timeout);
+	}
+
+	/**
+	 * Get the number of calls the identifier may start without waiting.
+	 * 
+	 * @param identifier
+	 *            the identifier of a service or parameter
+	 * @return the number of available permits
+	 */
+	public int available(ANES_URN identifier) {
+		final Semaphore permits = this.semaphores.get(identifier.pure());
+		return permits == null ? this.permits : permits.availablePermits();
+	}
+
+	/**
+	 * Limit the calls to the parameters of a parameterizable.
+	 * 
+	 * @param parameterizable
+	 *            the parameterizable to limit
+	 * @return a parameterizable which calls the given one within the limits
+	 */
+	public Parameterizable limit(Parameterizable parameterizable) {
+		if (parameterizable == null) {
+			throw new IllegalArgumentException(
+					"Parameterizable must be non-null");
+		}
+		return new LimitedParameterizable(parameterizable);
+	}
+
+	/**
+	 * Limit the calls to a service.
+	 * 
+	 * @param service
+	 *            the service to limit
+	 * @return a service which calls the given one within the limits
+	 */
+	public RESTService limit(RESTService service) {
+		if (service == null) {
+			throw new IllegalArgumentException("Service must be non-null");
+		}
+		return new LimitedService(service);
+	}
+
+	/**
+	 * Limit the calls to all services of a provider.
+	 * 
+	 * @param provider
+	 *            the provider of the services to limit
+	 * @return a provider which resolves to limited services
+	 */
+	public ServiceProvider limit(ServiceProvider provider) {
+		if (provider == null) {
+			throw new IllegalArgumentException("Provider must be non-null");
+		}
+		return new LimitedProvider(provider);
+	}
+
+	/**
+	 * Give an identifier a number of permits other than the default. Calls
+	 * that hold a permit of the identifier return it to its former
+	 * semaphore.
+	 * 
+	 * @param identifier
+	 *            the identifier of a service or parameter
+	 * @param permits
+	 *            the number of concurrent calls of the identifier
+	 */
+	public void setPermits(ANES_URN identifier, int permits) {
+		if (permits <= 0) {
+			throw new IllegalArgumentException("Permits must be positive");
+		}
+		this.semaphores.put(identifier.pure(), new Semaphore(permits));
+	}
+
+	private void acquire(Semaphore permits) throws InterruptedException,
+			TimeoutException {
+		if (this.timeout < 0) {
+			permits.acquire();
+		} else if (!permits.tryAcquire(this.timeout, TimeUnit.NANOSECONDS)) {
+			throw new TimeoutException();
+		}
+	}
+
+	private Semaphore permitsOf(ANES_URN identifier) {
+		final ANES_URN key = identifier.pure();
+		final Semaphore permits = this.semaphores.get(key);
+		if (permits != null) {
+			return permits;
+		}
+		final Semaphore created = new Semaphore(this.permits);
+		final Semaphore raced = this.semaphores.putIfAbsent(key, created);
+		return raced == null ? created : raced;
+	}
+
+}
@@ -0,0 +1,60 @@
+/**
+ * File ServiceRegistryListener.java
+ * 
+ * This file is part of the eu.artemis.demanes project.
+ *
+ * Copyright 2014 TNO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.artemis.demanes.lib.services;
+
+/**
+ * <h1>ServiceRegistryListener</h1>
+ * 
+ * <p>
+ * Is told about the changes of a {@link ConcurrentServiceRegistry}, so that
+ * it can drop whatever it derived from an older
+ * {@linkplain ConcurrentServiceRegistry.Snapshot snapshot}, such as cached
+ * resolutions or responses. Every change publishes a snapshot with a higher
+ * version, which is passed along.
+ * </p>
+ *
+ * @author DEMANES
+ * @version 0.1
+ * @since 18 okt. 2026
+ *
+ */
+public interface ServiceRegistryListener {
+
+	/**
+	 * A service was registered.
+	 * 
+	 * @param service
+	 *            the service
+	 * @param version
+	 *            the version of the snapshot which holds the service
+	 */
+	public void serviceRegistered(RESTService service, long version);
+
+	/**
+	 * A service was unregistered.
+	 * 
+	 * @param service
+	 *            the service, as it was registered
+	 * @param version
+	 *            the version of the first snapshot without the service
+	 */
+	public void serviceUnregistered(RESTService service, long version);
+
+}
@@ -0,0 +1,236 @@
+/**
+ * File SessionURNDictionary.java
+ * 
+ * This file is part of the eu.artemis.demanes project.
+ *
+ * Copyright 2014 TNO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.artemis.demanes.lib.services;
+
+import java.util.Arrays;
+
+import eu.artemis.demanes.datatypes.ANES_URN;
+
+/**
+ * <h1>SessionURNDictionary</h1>
+ * 
+ * <p>
+ * A URNDictionary that is built up during a session between two peers. Every
+ * session has two of them: one for the URNs this end sends, to which it adds
+ * URNs as it first sends them, and one for the URNs the peer sends, to which
+ * it adds the definitions it receives. The
+ * {@link eu.artemis.demanes.lib.URNSerializer} does both when created with
+ * the pair of dictionaries of a session, so that identifiers are negotiated
+ * incrementally without a separate exchange.
+ * </p>
+ * 
+ * <p>
+ * Identifiers are handed out consecutively from zero. The URNs are kept in an
+ * array indexed by identifier, and the identifiers in an open-addressing
+ * table keyed by URN, so neither lookup boxes or allocates.
+ * </p>
+ * 
+ * <p>
+ * A session encodes and decodes its messages in order, so a dictionary is
+ * meant to be confined to its session and is not thread-safe.
+ * </p>
+ *
+ * @author DEMANES
+ * @version 0.1
+ * @since 18 okt. 2026
+ *
+ */
+public class SessionURNDictionary implements URNDictionary {
+
+	private static final int INITIAL_SIZE = 16;
+
+	private final int capacity;
+
+	private ANES_URN[] urns;
+
+	private ANES_URN[] keys;
+
+	private int[] ids;
+
+	private int size;
+
+	/**
+	 * @param capacity
+	 *            the maximum number of URNs in the dictionary. Both peers of a
+	 *            session should use the same capacity.
+	 */
+	public SessionURNDictionary(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Capacity must be positive");
+		}
+		this.capacity = capacity;
+		this.urns = new ANES_URN[Math.min(capacity, INITIAL_SIZE)];
+		this.keys = new ANES_URN[Integer.highestOneBit(this.urns.length) << 2];
+		this.ids = new int[this.keys.length];
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public ANES_URN byteToURN(byte b) {
+		return this.urnOf(b & 0xFF);
+	}
+
+	/**
+	 * Add the URN to the dictionary, if it is not yet in there and the
+	 * dictionary is not full.
+	 * 
+	 * @param urn
+	 *            the URN to add
+	 * @return the identifier of the URN, or {@link #NONE} if the dictionary is
+	 *         full
+	 */
+	public int define(ANES_URN urn) {
+		final int id = this.idOf(urn);
+		if (id != NONE || this.isFull()) {
+			return id;
+		}
+		this.add(this.size, urn);
+		return this.size - 1;
+	}
+
+	/**
+	 * Add the URN to the dictionary under the identifier the peer gave it. The
+	 * peer hands out identifiers consecutively, so this must be the next
+	 * identifier, or one the URN already has.
+	 * 
+	 * @param id
+	 *            the identifier of the URN
+	 * @param urn
+	 *            the URN to add
+	 * @throws IllegalStateException
+	 *             if the definition does not follow the ones before
+	 */
+	public void define(int id, ANES_URN urn) {
+		if (id < this.size && urn.equals(this.urns[id])) {
+			return;
+		}
+		if (id != this.size || this.isFull() || this.idOf(urn) != NONE) {
+			throw new IllegalStateException("Definition of " + urn + " as "
+					+ id + " does not follow the " + this.size
+					+ " definitions before");
+		}
+		this.add(id, urn);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int idOf(ANES_URN urn) {
+		final int mask = this.keys.length - 1;
+		int i = SessionURNDictionary.hash(urn) & mask;
+		for (ANES_URN key = this.keys[i]; key != null; key = this.keys[i]) {
+			if (key == urn || key.equals(urn)) {
+				return this.ids[i];
+			}
+			i = (i + 1) & mask;
+		}
+		return NONE;
+	}
+
+	/**
+	 * Whether no more URNs can be added to the dictionary.
+	 * 
+	 * @return true if the dictionary is full
+	 */
+	public boolean isFull() {
+		return this.size == this.capacity;
+	}
+
+	/**
+	 * Get the identifier the next URN added will get.
+	 * 
+	 * @return the next identifier
+	 */
+	public int nextId() {
+		return this.size;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public ANES_URN urnOf(int id) {
+		if (id < 0 || id >= this.size) {
+			return null;
+		}
+		return this.urns[id];
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Byte URNToByte(ANES_URN a) {
+		final int id = this.idOf(a);
+		if (id == NONE || id > 0xFF) {
+			return null;
+		}
+		return Byte.valueOf((byte) id);
+	}
+
+	private static int hash(ANES_URN urn) {
+		final int h = urn.hashCode();
+		return h ^ (h >>> 16);
+	}
+
+	private void add(int id, ANES_URN urn) {
+		if (id == this.urns.length) {
+			this.urns = Arrays.copyOf(this.urns,
+					Math.min(this.capacity, 2 * this.urns.length));
+		}
+		this.urns[id] = urn;
+		this.size++;
+		if (2 * this.size > this.keys.length) {
+			this.rehash(2 * this.keys.length);
+		} else {
+			this.insert(urn, id);
+		}
+	}
+
+	private void insert(ANES_URN urn, int id) {
+		final int mask = this.keys.length - 1;
+		int i = SessionURNDictionary.hash(urn) & mask;
+		while (this.keys[i] != null) {
+			i = (i + 1) & mask;
+		}
+		this.keys[i] = urn;
+		this.ids[i] = id;
+	}
+
+	private void rehash(int length) {
+		this.keys = new ANES_URN[length];
+		this.ids = new int[length];
+		for (int id = 0; id < this.size; id++) {
+			this.insert(this.urns[id], id);
+		}
+	}
+
+}
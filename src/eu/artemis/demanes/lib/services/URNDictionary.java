@@ -0,0 +1,70 @@
+/**
+ * File URNDictionary.java
+ * 
+ * This file is part of the eu.artemis.demanes project.
+ *
+ * Copyright 2014 TNO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.artemis.demanes.lib.services;
+
+import eu.artemis.demanes.datatypes.ANES_URN;
+
+/**
+ * URNDictionary
+ * 
+ * A URNTranslator which is not limited to 256 identifiers. URNs are mapped to
+ * non-negative int identifiers, and both lookups are done without boxing.
+ * Identifiers that fit in a byte are still available through the
+ * URNTranslator functions.
+ *
+ * @author DEMANES
+ * @version 0.1
+ * @since 18 okt. 2026
+ *
+ */
+public interface URNDictionary extends URNTranslator {
+
+	/**
+	 * The identifier returned for URNs that are not in the dictionary.
+	 */
+	public static final int NONE = -1;
+
+	/**
+	 * Get the identifier of the URN.
+	 * 
+	 * @param urn
+	 *            the URN to look up
+	 * @return the identifier of the URN, or {@link #NONE} if it is not in the
+	 *         dictionary
+	 */
+	public int idOf(ANES_URN urn);
+
+	/**
+	 * Get the URN with the identifier.
+	 * 
+	 * @param id
+	 *            the identifier to look up
+	 * @return the URN, or null if no URN has this identifier
+	 */
+	public ANES_URN urnOf(int id);
+
+	/**
+	 * Get the number of URNs in the dictionary.
+	 * 
+	 * @return the number of URNs
+	 */
+	public int size();
+
+}
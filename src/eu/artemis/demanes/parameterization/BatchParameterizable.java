@@ -0,0 +1,71 @@
+/**
+ * Copyright 2014 TNO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+
+package eu.artemis.demanes.parameterization;
+
+import java.util.Collection;
+import java.util.Map;
+
+import eu.artemis.demanes.datatypes.ANES_URN;
+import eu.artemis.demanes.exceptions.ParameterizationException;
+
+/**
+ * BatchParameterizable
+ * 
+ * A Parameterizable which retrieves or modifies many parameters in one call,
+ * so that a remote node can be reconfigured in a single round trip instead of
+ * one per parameter.
+ * 
+ * This is a separate interface rather than new methods of Parameterizable,
+ * so that existing implementations remain valid; callers check for it with
+ * instanceof, or adapt a plain Parameterizable to it.
+ * 
+ * @author DEMANES
+ * @version 0.1
+ * @since 18 okt. 2026
+ * 
+ */
+public interface BatchParameterizable extends Parameterizable {
+
+	/**
+	 * Retrieves the values of the parameters identified by the given urns.
+	 * 
+	 * @param urns
+	 *            the identifiers of the parameters or parameter getter
+	 *            functions.
+	 * @return the value of every parameter, in the order of the urns.
+	 * @throws ParameterizationException
+	 *             if any of the parameters can not be retrieved.
+	 */
+	public Map<ANES_URN, Object> getParameters(Collection<ANES_URN> urns)
+			throws ParameterizationException;
+
+	/**
+	 * Sets the parameters identified by the keys of the map to their values.
+	 * 
+	 * Implementations apply the batch atomically where they can: if one of
+	 * the parameters can not be set, none of them is changed.
+	 * 
+	 * @param values
+	 *            the new value of every parameter or parameter setter
+	 *            function.
+	 * @throws ParameterizationException
+	 *             if any of the parameters can not be set.
+	 */
+	public void setParameters(Map<ANES_URN, Object> values)
+			throws ParameterizationException;
+
+}